@@ -0,0 +1,147 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dongburobot.herkulex.Packet;
+import dongburobot.herkulex.PacketDecoder;
+import dongburobot.herkulex.PacketEncoder;
+
+/**
+ * Packet encoding and decoding throughput, without any port.
+ * 
+ * @author DongbuRobot
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	private static final int ACKS = 8;		// RAM read ACKs per decode
+
+	private final PacketEncoder mEncoder = new PacketEncoder(new byte[4096]);
+	private final PacketDecoder mDecoder = new PacketDecoder();
+	private final Packet mPacket = new Packet();
+	private byte[] mAcks;
+	private byte[] mNoisyAcks;
+
+	@Setup
+	public void setup() {
+		PacketEncoder encoder = new PacketEncoder(new byte[4096]);
+		for (int id = 0; id < ACKS; id++) {
+			encodeStateAck(encoder, id);
+		}
+		mAcks = new byte[encoder.length()];
+		System.arraycopy(encoder.getBuffer(), 0, mAcks, 0, mAcks.length);
+		
+		// same ACKs with line noise and a false header in between
+		encoder.reset();
+		byte[] noisy = new byte[4096];
+		int n = 0;
+		for (int id = 0; id < ACKS; id++) {
+			noisy[n++] = (byte) 0xFF;
+			noisy[n++] = (byte) 0xFF;
+			noisy[n++] = 0x30;
+			noisy[n++] = 0x11;
+			encoder.reset();
+			encodeStateAck(encoder, id);
+			System.arraycopy(encoder.getBuffer(), 0, noisy, n, encoder.length());
+			n += encoder.length();
+		}
+		mNoisyAcks = new byte[n];
+		System.arraycopy(noisy, 0, mNoisyAcks, 0, n);
+	}
+
+	/** One register write, like setLed(). */
+	@Benchmark
+	public int encodeRamWrite() {
+		mEncoder.reset();
+		mEncoder.begin(1, 0x03);
+		mEncoder.put(0x35);			// Address
+		mEncoder.put(0x01);			// Length
+		mEncoder.put(0x04);
+		return mEncoder.end();
+	}
+
+	/** A full S_JOG packet of 53 servos, like actionAll(). */
+	@Benchmark
+	public int encodeSjog53() {
+		mEncoder.reset();
+		mEncoder.begin(0xFE, 0x06);
+		mEncoder.put(0x3C);			// Playtime
+		for (int id = 0; id < 53; id++) {
+			mEncoder.putWord(512 + id);
+			mEncoder.put(0x04);
+			mEncoder.put(id);
+		}
+		return mEncoder.end();
+	}
+
+	/** 8 readState() replies back to back. */
+	@Benchmark
+	public void decodeAcks(Blackhole bh) {
+		mDecoder.feed(mAcks, 0, mAcks.length);
+		while (mDecoder.next(mPacket)) {
+			bh.consume(mPacket.getID());
+		}
+	}
+
+	/** The same replies with garbage to resync on. */
+	@Benchmark
+	public void decodeNoisyAcks(Blackhole bh) {
+		mDecoder.feed(mNoisyAcks, 0, mNoisyAcks.length);
+		while (mDecoder.next(mPacket)) {
+			bh.consume(mPacket.getID());
+		}
+	}
+
+	private static void encodeStateAck(PacketEncoder encoder, int id) {
+		encoder.begin(id, 0x44);
+		encoder.put(0x30);			// Address
+		encoder.put(18);			// Length
+		for (int i = 0; i < 18; i++) {
+			encoder.put(i * 7);
+		}
+		encoder.put(0x00);			// Status Error
+		encoder.put(0x00);			// Status Detail
+		encoder.end();
+	}
+}
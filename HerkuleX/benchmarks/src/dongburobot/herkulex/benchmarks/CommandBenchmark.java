@@ -0,0 +1,90 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dongburobot.herkulex.HerkuleX;
+import dongburobot.herkulex.ServoState;
+
+/**
+ * Command latency through the whole library, from the call to the bytes
+ * on the (fake) port and, for reads, back to the decoded value.
+ * SampleTime gives percentiles as well as the mean.
+ * 
+ * @author DongbuRobot
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+	private HerkuleX mHerkuleX;
+	private final ServoState mState = new ServoState();
+
+	@Setup
+	public void setup() {
+		mHerkuleX = new HerkuleX(new FakeServoTransport());
+	}
+
+	@Benchmark
+	public void moveOne() {
+		mHerkuleX.moveOne(1, 512, 100, HerkuleX.LED_GREEN);
+	}
+
+	/** 53 addMove() and one S_JOG packet. */
+	@Benchmark
+	public void actionAll53() {
+		for (int id = 0; id < 53; id++) {
+			mHerkuleX.addMove(id, 512, HerkuleX.LED_GREEN);
+		}
+		mHerkuleX.actionAll(100);
+	}
+
+	/** Request, reply and decode of one RAM read. */
+	@Benchmark
+	public int getPosition() {
+		return mHerkuleX.getPosition(1);
+	}
+
+	@Benchmark
+	public boolean readState() {
+		return mHerkuleX.readState(1, mState);
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex.benchmarks;
+
+import dongburobot.herkulex.Packet;
+import dongburobot.herkulex.PacketDecoder;
+import dongburobot.herkulex.PacketEncoder;
+import dongburobot.herkulex.Transport;
+
+/**
+ * Servos in memory.
+ * 
+ * Every servo answers RAM and EEP reads at once from one register map
+ * (position 512, no error), so benchmarks measure the library and not
+ * the wire. Nothing is allocated after construction.
+ * 
+ * @author DongbuRobot
+ *
+ */
+public class FakeServoTransport implements Transport {
+
+	private static final int HEEPREAD = 0x02;
+	private static final int HRAMREAD = 0x04;
+
+	private final byte[] mRegisters = new byte[256];
+	private final PacketDecoder mDecoder = new PacketDecoder();
+	private final Packet mRequest = new Packet();
+	private final PacketEncoder mReplies = new PacketEncoder(new byte[4096]);
+	private int mReadPos;
+	private long mWritten;
+
+	public FakeServoTransport() {
+		mRegisters[0x3A] = 0x00;				// Calibrated Position 512
+		mRegisters[0x3B] = 0x02;
+		mRegisters[0x3C] = 0x00;				// Absolute Position 512
+		mRegisters[0x3D] = 0x02;
+	}
+
+	public void write(byte[] buf, int off, int len) {
+		mWritten += len;
+		mDecoder.feed(buf, off, len);
+		
+		while (mDecoder.next(mRequest)) {
+			int cmd = mRequest.getCommand();
+			if (cmd != HRAMREAD && cmd != HEEPREAD) continue;
+			if (mReplies.remaining() < 223) continue;		// nobody reads the replies
+			
+			int address = mRequest.getData(0) & 0xFF;
+			int length = mRequest.getData(1) & 0xFF;
+			mReplies.begin(mRequest.getID(), cmd | 0x40);
+			mReplies.put(address);
+			mReplies.put(length);
+			for (int i = 0; i < length; i++) {
+				mReplies.put(mRegisters[(address + i) & 0xFF] & 0xFF);
+			}
+			mReplies.put(0x00);					// Status Error
+			mReplies.put(0x00);					// Status Detail
+			mReplies.end();
+		}
+	}
+
+	public int available() {
+		return mReplies.length() - mReadPos;
+	}
+
+	public int read(byte[] buf) {
+		int n = Math.min(buf.length, available());
+		System.arraycopy(mReplies.getBuffer(), mReadPos, buf, 0, n);
+		mReadPos += n;
+		if (mReadPos == mReplies.length()) clear();
+		return n;
+	}
+
+	public void clear() {
+		mReplies.reset();
+		mReadPos = 0;
+	}
+
+	public int getBaudRate() {
+		return 115200;
+	}
+
+	/**
+	 * @return number of bytes written by the library
+	 */
+	public long getWritten() {
+		return mWritten;
+	}
+}
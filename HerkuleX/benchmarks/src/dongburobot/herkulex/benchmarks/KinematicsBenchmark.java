@@ -0,0 +1,109 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dongburobot.herkulex.HerkuleX;
+import dongburobot.herkulex.JointChain;
+
+/**
+ * Inverse kinematics of a 6 joint arm following a target around a circle,
+ * as a control loop would: every call starts from the previous solution.
+ * Run with -prof gc to check that solve() allocates nothing.
+ * 
+ * @author DongbuRobot
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KinematicsBenchmark {
+
+	private static final int STEPS = 360;
+
+	private HerkuleX mHerkuleX;
+	private JointChain mArm;
+	private final float[] mTargetX = new float[STEPS];
+	private final float[] mTargetY = new float[STEPS];
+	private final float[] mTip = new float[3];
+	private int mStep;
+
+	@Setup
+	public void setup() {
+		mHerkuleX = new HerkuleX(new FakeServoTransport());
+		mArm = new JointChain(mHerkuleX);
+		mArm.addJoint(1, 0, 90, 60);
+		mArm.addJoint(2, 100, 0, 0);
+		mArm.addJoint(3, 80, 0, 0);
+		mArm.addJoint(4, 0, 90, 0);
+		mArm.addJoint(5, 0, -90, 60);
+		mArm.addJoint(6, 0, 0, 30);
+		for (int i = 0; i < 6; i++) {
+			mArm.setJointAngle(i, 20);
+		}
+		
+		for (int i = 0; i < STEPS; i++) {
+			double a = Math.toRadians(i);
+			mTargetX[i] = (float) (120 + 40 * Math.cos(a));
+			mTargetY[i] = (float) (40 * Math.sin(a));
+		}
+	}
+
+	@Benchmark
+	public void forward() {
+		mArm.forward(mTip);
+	}
+
+	/** One degree further around the circle. */
+	@Benchmark
+	public boolean solve() {
+		int i = mStep++ % STEPS;
+		return mArm.solve(mTargetX[i], mTargetY[i], 80);
+	}
+
+	/** solve(), then the 6 angles out in one S_JOG packet. */
+	@Benchmark
+	public boolean solveAndMove() {
+		int i = mStep++ % STEPS;
+		boolean reached = mArm.solve(mTargetX[i], mTargetY[i], 80);
+		mArm.addAngles(HerkuleX.LED_GREEN);
+		mHerkuleX.actionAll(20);
+		return reached;
+	}
+}
@@ -0,0 +1,55 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+
+String profileFile = "timeouts.hxt";
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  // start from what was learned last time, if anything
+  TimeoutProfile profile = null;
+  if (new File(sketchPath(profileFile)).exists()) profile = TimeoutProfile.load(sketchPath(profileFile));
+  
+  if (profile != null) {
+    myHerkuleX.setTimeoutProfile(profile);
+  } else {
+    myHerkuleX.setAdaptiveTimeout(true);
+  }
+}
+
+void draw() {
+  background(0);
+  
+  for (int i = 0; i < motorIDs.length; i++) {
+    myHerkuleX.getPosition(motorIDs[i]);
+  }
+}
+
+void mousePressed() {
+  TimeoutProfile profile = myHerkuleX.getTimeoutProfile();
+  println(profile);
+  profile.save(sketchPath(profileFile));
+}
@@ -0,0 +1,53 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+
+// false: drive the servos and log the bus, true: play the log back without servos
+boolean replay = false;
+String logFile = "bus.hxc";
+
+void setup() {
+  size(256, 256);
+  
+  if (replay) {
+    myHerkuleX = new HerkuleX(ReplayTransport.open(sketchPath(logFile), true));
+  } else {
+    println(Serial.list());
+    String portName = Serial.list()[0];
+    
+    myPort = new Serial(this, 
+                  portName /* your USB2Serial Port ex)"COM1" */, 
+                  115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                  
+    myHerkuleX = new HerkuleX(myPort);
+    myHerkuleX.startCapture(sketchPath(logFile));
+  }
+  myHerkuleX.initialize();
+}
+
+void draw() {
+  background(0);
+  
+  for (int i = 0; i < motorIDs.length; i++) {
+    print(myHerkuleX.getPosition(motorIDs[i]) + " ");
+  }
+  println();
+}
+
+void mousePressed() {
+  // the log is complete once capture stops
+  myHerkuleX.stopCapture();
+  exit();
+}
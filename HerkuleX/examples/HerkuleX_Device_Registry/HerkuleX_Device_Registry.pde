@@ -0,0 +1,47 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+DeviceRegistry robot;
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  // the first run scans the line and saves what it found,
+  // later runs only check the saved servos
+  int start = millis();
+  robot = myHerkuleX.discover(sketchPath("robot.hxd"));
+  println(robot.size() + " servos in " + (millis() - start) + " ms");
+  print(robot);
+}
+
+void draw() {
+  background(0);
+}
+
+void mousePressed() {
+  // answered from the registry, no read on the line
+  for (int id : robot.getIDs()) {
+    println(id + ": model " + myHerkuleX.model(id) + ", limits " + robot.getMinPosition(id) + " ~ " + robot.getMaxPosition(id));
+  }
+}
@@ -0,0 +1,61 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+String backupFile;
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  backupFile = sketchPath("robot.hxe");
+  println("b: backup, r: restore, n: set up a new servo (ID 253) as servo 0");
+}
+
+void draw() {
+  background(0);
+}
+
+void keyPressed() {
+  if (key == 'b') {
+    // all EEP registers of all servos, in one go
+    EEPSnapshot backup = myHerkuleX.backupEEP(motorIDs);
+    backup.save(backupFile);
+    println(backup.size() + " servos saved");
+  }
+  else if (key == 'r') {
+    // only the registers that changed are written, then checked
+    EEPSnapshot backup = EEPSnapshot.load(backupFile);
+    if (backup == null) return;
+    println(myHerkuleX.restoreEEP(backup) + " servos restored");
+  }
+  else if (key == 'n') {
+    // a replacement servo comes with ID 253; give it the settings and the ID of servo 0
+    EEPSnapshot backup = EEPSnapshot.load(backupFile);
+    if (backup == null) return;
+    if (myHerkuleX.restoreEEP(backup, 0, 253)) {
+      myHerkuleX.reboot(253);
+      println("new servo 0 ready");
+    }
+  }
+}
@@ -12,7 +12,7 @@ import dongburobot.herkulex.*;
 Serial myPort;
 HerkuleX myHerkuleX;
 
-ArrayList<Integer> servoIDs;
+ArrayList<ServoInfo> servos;
 
 void setup() {
   size(256, 256);
@@ -28,13 +28,14 @@ void setup() {
   myHerkuleX = new HerkuleX(myPort);
   myHerkuleX.initialize();
   
-  println("Scanning... It takes 8 seconds. Wait please.");
-  servoIDs = myHerkuleX.performIDScan();  // 30ms * 254 = 7.62s
+  println("Scanning...");
+  servos = myHerkuleX.performFastIDScan();  // about 0.6s at 115200 bps
+  // ArrayList<Integer> servoIDs = myHerkuleX.performIDScan();  // slow fallback: up to 30ms * 254 = 7.62s
   println("Done.");
-  println("Num of servos: " + servoIDs.size());
+  println("Num of servos: " + servos.size());
   
-  for (int i = 0; i < servoIDs.size(); i++) 
-    println("ID: " + servoIDs.get(i));
+  for (int i = 0; i < servos.size(); i++) 
+    println("ID: " + servos.get(i).getID() + ", Model: " + servos.get(i).getModel());
 }
 
 void draw() {
@@ -0,0 +1,48 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+void setup() {
+  size(256, 256);
+  noStroke();
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+}
+
+int motor0_ID = 0;
+int motor1_ID = 1;
+int motor2_ID = 2;
+
+void draw() {
+  // Each servo gets its own play time, and all of them go out in one I_JOG packet.
+  // One I_JOG packet can carry up to 43 servos.
+  myHerkuleX.addMove(motor0_ID, 789, HerkuleX.LED_BLUE | HerkuleX.LED_GREEN, 500);
+  myHerkuleX.addAngle(motor1_ID, -90.0f, 0, 1000);
+  myHerkuleX.addSpeed(motor2_ID, -512, HerkuleX.LED_RED, 2000);
+  myHerkuleX.actionAllIndividual();  
+  delay(3000);
+  
+  myHerkuleX.addMove(motor2_ID, 235, HerkuleX.LED_BLUE | HerkuleX.LED_GREEN, 2000);
+  myHerkuleX.addAngle(motor1_ID, 90.0f, 0, 1000);
+  myHerkuleX.addSpeed(motor0_ID, 512, HerkuleX.LED_RED, 500);
+  myHerkuleX.actionAllIndividual();
+  delay(3000);
+}
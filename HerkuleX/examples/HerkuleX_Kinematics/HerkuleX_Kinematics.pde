@@ -0,0 +1,56 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+JointChain arm;
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  // a 3 joint arm: base pan, shoulder and elbow, lengths in mm
+  arm = new JointChain(myHerkuleX);
+  arm.addJoint(0, 0, 90, 50);
+  arm.addJoint(1, 100, 0, 0);
+  arm.addJoint(2, 80, 0, 0);
+  arm.setReversed(1, true);       // mounted upside down
+  arm.setLimits(2, -135, 0);      // elbow bends one way only
+  arm.setJointAngle(2, -30);      // start in the elbow-up pose
+}
+
+void draw() {
+  background(0);
+  
+  // the mouse moves the tip over a plane 40 mm above the base
+  float x = map(mouseX, 0, width, 40, 160);
+  float y = map(mouseY, 0, height, 80, -80);
+  
+  boolean reached = arm.solve(x, y, 40);
+  arm.addAngles(reached ? HerkuleX.LED_GREEN : HerkuleX.LED_RED);
+  myHerkuleX.actionAll(30);
+  
+  println("(" + x + ", " + y + ") " + arm.getIterations() + " iterations, off by " + arm.getResidual());
+}
+
+void mousePressed() {
+  myHerkuleX.torqueOFF(HerkuleX.BROADCAST_ID);
+}
@@ -0,0 +1,64 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+MotionPlayer myPlayer;
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  String keyframes = sketchPath("wave.hxk");
+  String compiled = sketchPath("wave.hxm");
+  
+  // make the keyframe file once, it can also be edited and saved by another tool
+  Motion motion = Motion.load(keyframes);
+  if (motion == null) {
+    motion = new Motion();
+    for (int t = 0; t <= 4000; t += 500) {
+      motion.addKeyframe(0, t, (t % 1000 == 0) ? -60.0f : 60.0f);
+      motion.addKeyframe(1, t, (t % 1000 == 0) ? 60.0f : -60.0f);
+    }
+    motion.setLed(0, HerkuleX.LED_GREEN);
+    motion.setLed(1, HerkuleX.LED_BLUE);
+    motion.save(keyframes);
+  }
+  
+  // precompute all S_JOG packets, 50 ticks per second
+  motion.compile(compiled, 50);
+  
+  // play them straight from the file
+  myPlayer = MotionPlayer.open(myHerkuleX, compiled);
+  myPlayer.setLoop(true);
+  myPlayer.play();
+}
+
+void draw() {
+  background(0);
+  fill(255);
+  text("ticks: " + myPlayer.getTickCount() + " / " + myPlayer.getFrameCount(), 10, 20);
+  text("missed: " + myPlayer.getMissedDeadlines(), 10, 40);
+}
+
+void stop() {
+  myPlayer.stop();
+}
@@ -0,0 +1,65 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+HerkuleXGroup myGroup;
+
+int[] motorIDs;
+int[] positions;
+boolean[] valid;
+
+void setup() {
+  size(256, 256);
+  noStroke();
+		
+  println(Serial.list());
+  
+  // one HerkuleX per USB2Serial port, ex) left arm on the first, right arm on the second
+  Serial port1 = new Serial(this, Serial.list()[0], 115200);
+  Serial port2 = new Serial(this, Serial.list()[1], 115200);
+                
+  myGroup = new HerkuleXGroup(new HerkuleX(port1), new HerkuleX(port2));
+  myGroup.initialize();
+  
+  // find out which servo is on which port
+  ArrayList<ServoInfo> servos = myGroup.performFastIDScan();
+  motorIDs = new int[servos.size()];
+  positions = new int[servos.size()];
+  valid = new boolean[servos.size()];
+  for (int i = 0; i < servos.size(); i++) {
+    motorIDs[i] = servos.get(i).getID();
+    println("ID " + motorIDs[i] + " on port " + myGroup.getPortOf(motorIDs[i]));
+  }
+}
+
+void draw() {
+  background(0);
+  
+  // both ports are read at the same time
+  myGroup.readPositions(motorIDs, positions, valid);
+  for (int i = 0; i < motorIDs.length; i++) {
+    fill(valid[i] ? 255 : 100);
+    rect(10, 10 + i * 12, map(positions[i], 0, 1023, 0, width - 20), 10);
+  }
+}
+
+void mousePressed() {
+  int goal = (int) map(mouseX, 0, width, 21, 1002);
+  
+  // each servo goes to its own port, both ports move together
+  for (int i = 0; i < motorIDs.length; i++) {
+    myGroup.addMove(motorIDs[i], goal, HerkuleX.LED_GREEN);
+  }
+  myGroup.actionAll(1000);
+}
+
+void stop() {
+  myGroup.stop();
+}
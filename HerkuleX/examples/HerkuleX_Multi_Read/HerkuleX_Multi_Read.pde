@@ -0,0 +1,44 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+int[] positions = new int[motorIDs.length];
+boolean[] valid = new boolean[motorIDs.length];
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+}
+
+void draw() {
+  background(0);
+  
+  // all positions in one sweep instead of one round trip per servo
+  int start = millis();
+  int n = myHerkuleX.readPositions(motorIDs, positions, valid);
+  
+  for (int i = 0; i < motorIDs.length; i++) {
+    print(valid[i] ? positions[i] + " " : "- ");
+  }
+  println("(" + n + " servos in " + (millis() - start) + " ms)");
+}
@@ -0,0 +1,50 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+
+void setup() {
+  size(256, 256);
+  noStroke();
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  // read the servos 50 times per second in the background
+  myHerkuleX.startPolling(motorIDs, 50);
+}
+
+void draw() {
+  background(0);
+  
+  // the latest positions, without waiting for the servos
+  for (int i = 0; i < motorIDs.length; i++) {
+    float angle = myHerkuleX.getCachedAngle(motorIDs[i]);
+    float age = myHerkuleX.getCachedAge(motorIDs[i]);
+    
+    fill(age >= 0 && age < 100 ? 255 : 100);
+    rect(10, 20 + i * 30, map(angle, -167, 167, 0, width - 20), 20);
+  }
+}
+
+void stop() {
+  myHerkuleX.stopPolling();
+}
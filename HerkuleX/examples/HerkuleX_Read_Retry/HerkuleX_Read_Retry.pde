@@ -0,0 +1,51 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  // a broken reply is asked again up to 3 times, all within 10 ms
+  myHerkuleX.setReadRetries(3);
+  myHerkuleX.setReadBudget(10);
+}
+
+void draw() {
+  background(0);
+  
+  for (int i = 0; i < motorIDs.length; i++) {
+    try {
+      print(myHerkuleX.readPosition(motorIDs[i]) + " ");
+    } catch (ReadException e) {
+      switch (e.getReason()) {
+      case ReadException.CHECKSUM:      print("noise "); break;
+      case ReadException.WRONG_ID:      print("ID conflict "); break;
+      case ReadException.WRONG_COMMAND: print("stale reply "); break;
+      default:                          print("no reply "); break;
+      }
+    }
+  }
+  println();
+}
@@ -0,0 +1,45 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int motorID = 253;
+
+ServoState state = new ServoState();
+
+void setup() {
+  size(256, 256);
+  noStroke();
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+}
+
+void draw() {
+  // status, position, speed, PWM, voltage and temperature in one round trip
+  if (myHerkuleX.readState(motorID, state)) {
+    println("position: " + state.getPosition() 
+          + ", speed: " + state.getDifferentialPosition() 
+          + ", PWM: " + state.getPWM()
+          + ", voltage: " + state.getVoltage() + "V"
+          + ", status: " + state.getStatusError());
+  }
+  
+  delay(100);
+}
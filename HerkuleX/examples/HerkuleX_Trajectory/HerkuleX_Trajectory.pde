@@ -0,0 +1,59 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+TrajectoryPlayer myPlayer;
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  // 50 targets per second, sent on time whatever the frame rate is
+  myPlayer = new TrajectoryPlayer(myHerkuleX, 50);
+  
+  // time (ms), angle (degree) of each servo
+  myPlayer.addKeyframe(0,    0,   0.0f);
+  myPlayer.addKeyframe(0, 1000,  90.0f);
+  myPlayer.addKeyframe(0, 2000, -90.0f);
+  myPlayer.addKeyframe(0, 3000,   0.0f);
+  
+  myPlayer.addKeyframe(1,    0,   0.0f);
+  myPlayer.addKeyframe(1, 1500,  45.0f);
+  myPlayer.addKeyframe(1, 3000,   0.0f);
+  
+  myPlayer.setLed(0, HerkuleX.LED_GREEN);
+  myPlayer.setLed(1, HerkuleX.LED_BLUE);
+  myPlayer.setLoop(true);
+  myPlayer.play();
+}
+
+void draw() {
+  background(0);
+  fill(255);
+  text("ticks: " + myPlayer.getTickCount(), 10, 20);
+  text("missed: " + myPlayer.getMissedDeadlines(), 10, 40);
+  text("max late: " + myPlayer.getMaxLateness() + " ms", 10, 60);
+}
+
+void stop() {
+  myPlayer.stop();
+}
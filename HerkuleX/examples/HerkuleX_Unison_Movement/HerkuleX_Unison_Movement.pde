@@ -32,11 +32,9 @@ int motor1_ID = 1;
 int motor2_ID = 2;
 
 void draw() {
-  // In unison movement, actionAll() only care about first 50 servo motors.
-  // If you want to control over than 50 motors, 
-  // do like this 
-  // addSth(), ..., addSth() <-- 50th, actionAll(playtime);
-  // addSth(), ..., addSth() <-- 100th, actionAll(playtime);
+  // In unison movement, one S_JOG packet carries up to 53 servo motors.
+  // actionAll() splits more servos into several packets and sends them in one write.
+  // Adding the same servo twice keeps the last one.
   myHerkuleX.addMove(motor0_ID, 789, HerkuleX.LED_BLUE | HerkuleX.LED_GREEN);
   myHerkuleX.addAngle(motor1_ID, -90.0f, 0);
   myHerkuleX.addSpeed(motor2_ID, -512, HerkuleX.LED_RED);
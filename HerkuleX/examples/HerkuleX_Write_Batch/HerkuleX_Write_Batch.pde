@@ -0,0 +1,68 @@
+import processing.serial.*;
+import dongburobot.herkulex.*;
+
+/*
+  How to wire up between your PC and HerkuleX servos:
+    see. http://www.hovis.co.kr/guide/herkulexeng.pdf
+  
+  To set up HerkuleX servo parameters (i.e. PID Gain, Pos Limit, Torque and Error Policy, and  etc.)
+  use HerkuleX Manager S/W (Windows only). Download link: http://hovis.co.kr/guide/engpc_thum.htm
+*/
+
+Serial myPort;
+HerkuleX myHerkuleX;
+
+int[] motorIDs = { 0, 1, 2 };
+WriteBatch myBatch;
+
+void setup() {
+  size(256, 256);
+		
+  println(Serial.list());
+  String portName = Serial.list()[0];
+		
+  myPort = new Serial(this, 
+                portName /* your USB2Serial Port ex)"COM1" */, 
+                115200 /* The default baudrate of HerkuleX servo is 115200 */); 
+                
+  myHerkuleX = new HerkuleX(myPort);
+  myHerkuleX.initialize();
+  
+  myBatch = new WriteBatch(myHerkuleX);
+}
+
+void draw() {
+  background(0);
+}
+
+void mousePressed() {
+  // softer when the mouse is on the right
+  int slope = (int) map(mouseX, 0, width, 4000, 500);
+  
+  for (int i = 0; i < motorIDs.length; i++) {
+    myBatch.writeRAM(motorIDs[i], 0x0A, 2);          // Dead Zone
+    myBatch.writeRAM(motorIDs[i], 0x0B, 10);         // Saturator Offset
+    myBatch.writeRAMWord(motorIDs[i], 0x0C, slope);  // Saturator Slope
+    myBatch.writeRAM(motorIDs[i], 0x35, 0x02);       // LED blue
+  }
+  
+  // 0x0A ~ 0x0D go out as one write per servo, then the LEDs, all at once
+  println(myBatch.flush() + " packets");
+}
+
+void keyPressed() {
+  // torque off, confirmed by every servo (needs setAckPolicy(2))
+  myHerkuleX.setAckPolicy(2);
+  for (int i = 0; i < motorIDs.length; i++) {
+    myHerkuleX.clearError(motorIDs[i]);
+    myBatch.writeRAM(motorIDs[i], 0x34, 0x00);       // Torque OFF
+  }
+  
+  if (!myBatch.flushVerified()) {
+    int[] failed = myBatch.getFailedIDs();
+    for (int i = 0; i < failed.length; i++) {
+      println("servo " + failed[i] + " did not confirm, status " + myBatch.getStatusError(failed[i]));
+    }
+  }
+  myHerkuleX.setAckPolicy(1);
+}
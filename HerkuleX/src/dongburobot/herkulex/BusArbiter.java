@@ -0,0 +1,222 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gives the bus to one caller at a time.
+ * 
+ * A request/response transaction holds the bus from lock() to unlock(),
+ * so no other packet goes out and no other caller reads its reply.
+ * 
+ * Fire-and-forget writes never wait for a transaction. When the bus is
+ * free, write() sends straight from the caller's buffer with no copy.
+ * Otherwise it appends the packets to a pending buffer under a short lock;
+ * whoever holds or next gets the bus sends everything pending in one port
+ * write. Writes made while holding the bus go out, in order, at unlock().
+ * 
+ * Each thread encodes into its own PacketEncoder from encoder().
+ * 
+ * @author DongbuRobot
+ *
+ */
+class BusArbiter {
+
+	private static final int BUF_SIZE = 4096;
+
+	private final Transport mTransport;
+	private final ReentrantLock mBusLock = new ReentrantLock();
+
+	private final Object mPendingLock = new Object();
+	private byte[] mPending = new byte[BUF_SIZE];
+	private byte[] mSpare = new byte[BUF_SIZE];		// being sent by the bus owner
+	private int mPendingLength;
+
+	private volatile MetricsRecorder mMetrics;
+	private volatile WireCapture mCapture;
+
+	private final ThreadLocal<PacketEncoder> mEncoders = new ThreadLocal<PacketEncoder>() {
+		protected PacketEncoder initialValue() {
+			return new PacketEncoder(new byte[BUF_SIZE / 2]);
+		}
+	};
+
+	BusArbiter(Transport transport) {
+		mTransport = transport;
+	}
+
+	void setMetrics(MetricsRecorder metrics) {
+		mMetrics = metrics;
+	}
+
+	void setCapture(WireCapture capture) {
+		mCapture = capture;
+	}
+
+	/**
+	 * @return the calling thread's encoder, empty
+	 */
+	PacketEncoder encoder() {
+		PacketEncoder encoder = mEncoders.get();
+		encoder.reset();
+		return encoder;
+	}
+
+	/**
+	 * Queue the packets in encoder and send them as soon as the bus is free.
+	 * Does not wait for a transaction in progress.
+	 */
+	void write(PacketEncoder encoder) {
+		write(encoder.getBuffer(), 0, encoder.length());
+		encoder.reset();
+	}
+
+	/**
+	 * Same as write(PacketEncoder) for packets that are already encoded.
+	 */
+	void write(byte[] buf, int off, int len) {
+		if (len == 0) return;
+		
+		if (!mBusLock.isHeldByCurrentThread() && mBusLock.tryLock()) {	// bus is free: no copy
+			try {
+				sendPending();
+				transmit(buf, off, len);
+			} finally {
+				mBusLock.unlock();
+			}
+			drain();
+			return;
+		}
+		
+		if (len > BUF_SIZE) {			// too big to queue, send it now
+			lock();
+			try {
+				transmit(buf, off, len);
+			} finally {
+				unlock();
+			}
+			return;
+		}
+		
+		while (true) {
+			synchronized (mPendingLock) {
+				if (mPendingLength + len <= mPending.length) {
+					System.arraycopy(buf, off, mPending, mPendingLength, len);
+					mPendingLength += len;
+					break;
+				}
+			}
+			
+			if (mBusLock.isHeldByCurrentThread()) {	// pending buffer full: send it
+				sendPending();
+			} else {
+				lock();
+				unlock();
+			}
+		}
+		
+		if (!mBusLock.isHeldByCurrentThread()) drain();
+	}
+
+	/**
+	 * Send the packets in encoder right away. The bus must be held.
+	 * Pending writes go out first.
+	 */
+	void send(PacketEncoder encoder) {
+		send(encoder.getBuffer(), 0, encoder.length());
+		encoder.reset();
+	}
+
+	/**
+	 * Same as send(PacketEncoder) for packets that are already encoded.
+	 */
+	void send(byte[] buf, int off, int len) {
+		sendPending();
+		transmit(buf, off, len);
+	}
+
+	/**
+	 * Take the bus for a transaction. Pending writes go out first.
+	 */
+	void lock() {
+		mBusLock.lock();
+		if (mBusLock.getHoldCount() == 1) sendPending();
+	}
+
+	/**
+	 * Give the bus back. Writes made meanwhile go out now.
+	 */
+	void unlock() {
+		if (mBusLock.getHoldCount() == 1) sendPending();
+		mBusLock.unlock();
+		drain();
+	}
+
+	// Send what is pending if nobody else has the bus.
+	private void drain() {
+		while (hasPending() && mBusLock.tryLock()) {
+			try {
+				sendPending();
+			} finally {
+				mBusLock.unlock();
+			}
+		}
+	}
+
+	private boolean hasPending() {
+		synchronized (mPendingLock) {
+			return mPendingLength > 0;
+		}
+	}
+
+	// The bus must be held.
+	private void sendPending() {
+		byte[] buf;
+		int len;
+		
+		synchronized (mPendingLock) {
+			if (mPendingLength == 0) return;
+			
+			buf = mPending;
+			len = mPendingLength;
+			mPending = mSpare;
+			mSpare = buf;
+			mPendingLength = 0;
+		}
+		
+		transmit(buf, 0, len);
+	}
+
+	// Every byte sent goes through here. The bus must be held.
+	private void transmit(byte[] buf, int off, int len) {
+		mTransport.write(buf, off, len);
+		
+		MetricsRecorder metrics = mMetrics;
+		if (metrics != null) metrics.sent(len);
+		
+		WireCapture capture = mCapture;
+		if (capture != null) capture.frame(WireCapture.TX, buf, off, len);
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Bus counters and round-trip times at one moment.
+ * 
+ * ex)  BusMetrics m = herkuleX.getMetrics();
+ * 		println(m.getLatency(BusMetrics.CMD_RAM_READ, 1).getPercentile(99));
+ * 		println(m.getBusUtilization());
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Metrics
+ *
+ */
+public class BusMetrics {
+
+	public static final int CMD_EEP_READ	= 0x02;
+	public static final int CMD_RAM_READ	= 0x04;
+	public static final int CMD_STAT		= 0x07;
+
+	private final LatencyHistogram[] mLatency;		// [cmd * IDS + id], null if never sent
+	private final long mTxBytes;
+	private final long mRxBytes;
+	private final long mTimeouts;
+	private final long mChecksumErrors;
+	private final long mDroppedBytes;
+	private final long mElapsed;
+	private final int mBaudRate;
+
+	BusMetrics(LatencyHistogram[] latency, long txBytes, long rxBytes, long timeouts,
+			long checksumErrors, long droppedBytes, long elapsed, int baudRate) {
+		mLatency = latency;
+		mTxBytes = txBytes;
+		mRxBytes = rxBytes;
+		mTimeouts = timeouts;
+		mChecksumErrors = checksumErrors;
+		mDroppedBytes = droppedBytes;
+		mElapsed = elapsed;
+		mBaudRate = baudRate;
+	}
+
+	/**
+	 * @return number of bytes sent
+	 */
+	public long getTxBytes() {
+		return mTxBytes;
+	}
+
+	/**
+	 * @return number of bytes received
+	 */
+	public long getRxBytes() {
+		return mRxBytes;
+	}
+
+	/**
+	 * @return number of requests without a reply
+	 */
+	public long getTimeouts() {
+		return mTimeouts;
+	}
+
+	/**
+	 * @return number of received packets rejected by Checksum1/Checksum2
+	 */
+	public long getChecksumErrors() {
+		return mChecksumErrors;
+	}
+
+	/**
+	 * @return number of received bytes that were not part of a valid packet
+	 */
+	public long getDroppedBytes() {
+		return mDroppedBytes;
+	}
+
+	/**
+	 * @return time since metrics were enabled or reset, in ms
+	 */
+	public long getElapsed() {
+		return mElapsed / 1000000L;
+	}
+
+	/**
+	 * Share of the time the line was busy sending or receiving (8N1, 10 bits a byte).
+	 * 
+	 * @return 0.0 ~ 1.0
+	 */
+	public float getBusUtilization() {
+		if (mElapsed <= 0 || mBaudRate <= 0) return 0;
+		
+		double busy = (mTxBytes + mRxBytes) * 10.0 / mBaudRate;
+		return (float) Math.min(busy * 1e9 / mElapsed, 1.0);
+	}
+
+	/**
+	 * @param cmd request command, e.g. CMD_RAM_READ
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return round trips of cmd to servoID
+	 */
+	public LatencyHistogram getLatency(int cmd, int servoID) {
+		LatencyHistogram latency = null;
+		if (servoID >= 0 && servoID < MetricsRecorder.IDS) {
+			latency = mLatency[(cmd & (MetricsRecorder.COMMANDS - 1)) * MetricsRecorder.IDS + servoID];
+		}
+		return latency == null ? LatencyHistogram.empty() : latency;
+	}
+
+	/**
+	 * @param cmd request command, e.g. CMD_RAM_READ
+	 * @return round trips of cmd to every servo
+	 */
+	public LatencyHistogram getLatency(int cmd) {
+		int first = (cmd & (MetricsRecorder.COMMANDS - 1)) * MetricsRecorder.IDS;
+		return merge(first, first + MetricsRecorder.IDS);
+	}
+
+	/**
+	 * @return every round trip
+	 */
+	public LatencyHistogram getLatency() {
+		return merge(0, mLatency.length);
+	}
+
+	public String toString() {
+		return "tx: " + mTxBytes + " bytes, rx: " + mRxBytes + " bytes, timeouts: " + mTimeouts
+				+ ", checksum errors: " + mChecksumErrors + ", utilization: " + getBusUtilization()
+				+ ", latency: [" + getLatency() + "]";
+	}
+
+	private LatencyHistogram merge(int from, int to) {
+		LatencyHistogram sum = LatencyHistogram.empty();
+		for (int i = from; i < to; i++) {
+			sum = sum.merge(mLatency[i]);
+		}
+		return sum;
+	}
+}
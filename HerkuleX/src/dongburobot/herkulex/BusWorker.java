@@ -0,0 +1,195 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The one thread that runs the asynchronous commands of a HerkuleX.
+ * 
+ * Commands run in the order they were queued. Queued writes that follow
+ * each other are sent together in as few port writes as possible.
+ * A read sends its request, waits for the ACK with the same ID and
+ * command and completes its future with the result, or with a
+ * ReadException telling why when no valid reply comes within the
+ * read retries and budget.
+ * 
+ * Futures are completed on this thread.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class BusWorker implements Runnable {
+
+	private static class Task<T> {
+		final Callable<T> mRead;			// null for writes
+		final Runnable mWrite;
+		final CompletableFuture<T> mFuture;	// null for fire-and-forget writes
+
+		Task(Callable<T> read, Runnable write, CompletableFuture<T> future) {
+			mRead = read;
+			mWrite = write;
+			mFuture = future;
+		}
+	}
+
+	private final HerkuleX mHerkuleX;
+	private final BlockingQueue<Task<?>> mQueue = new LinkedBlockingQueue<Task<?>>();
+	private final Thread mThread;
+	private final Object mQueueLock = new Object();		// queueing against stop()
+	private volatile boolean mRunning = true;
+	private final ArrayList<Task<?>> mSent = new ArrayList<Task<?>>();	// runWrites() scratch
+
+	BusWorker(HerkuleX herkulex) {
+		mHerkuleX = herkulex;
+		mThread = new Thread(this, "HerkuleX bus");
+		mThread.setDaemon(true);
+		mThread.start();
+	}
+
+	/**
+	 * Queue a read. The callable runs on the bus thread.
+	 */
+	<T> CompletableFuture<T> read(Callable<T> read) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		synchronized (mQueueLock) {
+			if (mRunning) {
+				mQueue.add(new Task<T>(read, null, future));
+				return future;
+			}
+		}
+		
+		future.completeExceptionally(new CancellationException("HerkuleX bus thread stopped"));
+		return future;
+	}
+
+	/**
+	 * Queue a fire-and-forget write. The runnable runs on the bus thread.
+	 */
+	void write(Runnable write) {
+		synchronized (mQueueLock) {
+			if (mRunning) mQueue.add(new Task<Void>(null, write, null));
+		}
+	}
+
+	/**
+	 * Queue a write and get told when it is on the line.
+	 * The runnable runs on the bus thread and the future completes once the
+	 * bus is released, or exceptionally if the runnable threw.
+	 */
+	CompletableFuture<Void> send(Runnable write) {
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		synchronized (mQueueLock) {
+			if (mRunning) {
+				mQueue.add(new Task<Void>(null, write, future));
+				return future;
+			}
+		}
+		
+		future.completeExceptionally(new CancellationException("HerkuleX bus thread stopped"));
+		return future;
+	}
+
+	/**
+	 * Stop the thread. Reads still queued are cancelled and a read on the
+	 * line gives up at once.
+	 */
+	void stop() {
+		synchronized (mQueueLock) {
+			mRunning = false;				// nothing is queued after this
+		}
+		mThread.interrupt();
+		try {
+			mThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		Task<?> task;
+		while ((task = mQueue.poll()) != null) {
+			if (task.mFuture != null) task.mFuture.cancel(false);
+		}
+	}
+
+	public void run() {
+		while (mRunning) {
+			Task<?> task;
+			try {
+				task = mQueue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			
+			if (task.mRead != null) {
+				runRead(task);
+			} else {
+				runWrites(task);
+			}
+		}
+	}
+
+	private <T> void runRead(Task<T> task) {
+		try {
+			task.mFuture.complete(task.mRead.call());
+		} catch (Throwable e) {
+			task.mFuture.completeExceptionally(e);
+		}
+	}
+
+	// Run this write and every write queued right after it while holding the bus,
+	// so they are sent at once when it is released.
+	private void runWrites(Task<?> task) {
+		mHerkuleX.lockBus();
+		try {
+			while (true) {
+				try {
+					task.mWrite.run();
+					if (task.mFuture != null) mSent.add(task);
+				} catch (RuntimeException e) {
+					if (task.mFuture != null) {
+						task.mFuture.completeExceptionally(e);
+					} else {
+						e.printStackTrace();
+					}
+				}
+				
+				Task<?> next = mQueue.peek();
+				if (next == null || next.mRead != null) break;
+				task = mQueue.poll();
+			}
+		} finally {
+			mHerkuleX.unlockBus();
+		}
+		
+		for (int i = 0; i < mSent.size(); i++) {
+			mSent.get(i).mFuture.complete(null);
+		}
+		mSent.clear();
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The servos of a robot: model, firmware version and position limits by ID,
+ * as found by HerkuleX.discover().
+ * 
+ * File, big endian:
+ * 	"HXDR", version(1), servo count(1),
+ * 	per servo: ID(1), model(1), firmware(2), min position(2), max position(2)
+ * 
+ * ex)  DeviceRegistry robot = myHerkuleX.discover(sketchPath("robot.hxd"));
+ * 		for (int id : robot.getIDs()) {
+ * 		  println(id + ": DRS-0" + robot.getModel(id) + "01");
+ * 		}
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Device_Registry
+ *
+ */
+public class DeviceRegistry {
+
+	/** EEP registers read per servo: 0x00 ~ 0x1D, model to Max Position */
+	static final int EEP_LENGTH = 0x1E;
+
+	private static final int MAGIC = 0x48584452;		// "HXDR"
+	private static final int VERSION = 1;
+
+	// by ID, -1 if not in the registry
+	private final int[] mModel = new int[254];
+	private final int[] mFirmware = new int[254];
+	private final int[] mMinPosition = new int[254];
+	private final int[] mMaxPosition = new int[254];
+
+	DeviceRegistry() {
+		Arrays.fill(mModel, -1);
+	}
+
+	void put(int servoID, int model, int firmware, int minPosition, int maxPosition) {
+		mModel[servoID] = model;
+		mFirmware[servoID] = firmware;
+		mMinPosition[servoID] = minPosition;
+		mMaxPosition[servoID] = maxPosition;
+	}
+
+	// Same servos with the same registers
+	boolean sameAs(DeviceRegistry other) {
+		for (int id = 0; id < mModel.length; id++) {
+			if (mModel[id] != other.mModel[id]) return false;
+			if (mModel[id] == -1) continue;
+			if (mFirmware[id] != other.mFirmware[id]
+					|| mMinPosition[id] != other.mMinPosition[id]
+					|| mMaxPosition[id] != other.mMaxPosition[id]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return IDs of the servos in the registry, in ID order
+	 */
+	public int[] getIDs() {
+		int[] ids = new int[size()];
+		int n = 0;
+		for (int id = 0; id < mModel.length; id++) {
+			if (mModel[id] != -1) ids[n++] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * @return number of servos in the registry
+	 */
+	public int size() {
+		int n = 0;
+		for (int model : mModel) {
+			if (model != -1) n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return true if the servo is in the registry
+	 */
+	public boolean contains(int servoID) {
+		return servoID >= 0 && servoID < mModel.length && mModel[servoID] != -1;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return Model No1. 1 = DRS-0101, 2 = DRS-0201, -1 if not in the registry
+	 */
+	public int getModel(int servoID) {
+		return contains(servoID) ? mModel[servoID] : -1;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return firmware version (Version1 << 8 | Version2), -1 if not in the registry
+	 */
+	public int getFirmware(int servoID) {
+		return contains(servoID) ? mFirmware[servoID] : -1;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return Min Position 0 ~ 1023, -1 if not in the registry
+	 */
+	public int getMinPosition(int servoID) {
+		return contains(servoID) ? mMinPosition[servoID] : -1;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return Max Position 0 ~ 1023, -1 if not in the registry
+	 */
+	public int getMaxPosition(int servoID) {
+		return contains(servoID) ? mMaxPosition[servoID] : -1;
+	}
+
+	/**
+	 * @param path file name
+	 * @return true - success, false - failure
+	 */
+	public boolean save(String path) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(size());
+			for (int id = 0; id < mModel.length; id++) {
+				if (mModel[id] == -1) continue;
+				out.writeByte(id);
+				out.writeByte(mModel[id]);
+				out.writeShort(mFirmware[id]);
+				out.writeShort(mMinPosition[id]);
+				out.writeShort(mMaxPosition[id]);
+			}
+			out.close();
+			out = null;
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			IO.close(out);
+		}
+	}
+
+	/**
+	 * @param path file written by save()
+	 * @return the registry, null on failure
+	 */
+	public static DeviceRegistry load(String path) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				throw new IOException(path + " is not a HerkuleX device registry");
+			}
+			
+			int count = in.readUnsignedByte();
+			DeviceRegistry registry = new DeviceRegistry();
+			for (int i = 0; i < count; i++) {
+				int id = in.readUnsignedByte();
+				int model = in.readUnsignedByte();
+				int firmware = in.readUnsignedShort();
+				int min = in.readUnsignedShort();
+				int max = in.readUnsignedShort();
+				if (id < 254) registry.put(id, model, firmware, min, max);
+			}
+			return registry;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			IO.close(in);
+		}
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int id = 0; id < mModel.length; id++) {
+			if (mModel[id] == -1) continue;
+			sb.append("ID: ").append(id)
+				.append(", model: ").append(mModel[id])
+				.append(", version: ").append(mFirmware[id])
+				.append(", position: ").append(mMinPosition[id]).append(" ~ ").append(mMaxPosition[id])
+				.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The EEP registers of some servos, as read by HerkuleX.backupEEP().
+ * 
+ * File, big endian:
+ * 	"HXEP", version(1), registers per servo(1), servo count(1),
+ * 	per servo: ID(1), registers
+ * 
+ * ex)  EEPSnapshot backup = myHerkuleX.backupEEP(new int[] { 0, 1, 2 });
+ * 		backup.save("robot.hxe");
+ * 		...
+ * 		myHerkuleX.restoreEEP(EEPSnapshot.load("robot.hxe"));
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_EEP_Backup
+ *
+ */
+public class EEPSnapshot {
+
+	/** EEP registers 0x00 ~ 0x35 */
+	public static final int EEP_SIZE = 0x36;
+
+	private static final int MAGIC = 0x48584550;		// "HXEP"
+	private static final int VERSION = 1;
+
+	private final byte[][] mImages = new byte[254][];	// by ID, null if not in the snapshot
+
+	EEPSnapshot() {
+	}
+
+	void put(int servoID, byte[] image) {
+		mImages[servoID] = image;
+	}
+
+	byte[] image(int servoID) {
+		return (servoID < 0 || servoID >= mImages.length) ? null : mImages[servoID];
+	}
+
+	/**
+	 * @return IDs of the servos in the snapshot, in ID order
+	 */
+	public int[] getIDs() {
+		int[] ids = new int[size()];
+		int n = 0;
+		for (int id = 0; id < mImages.length; id++) {
+			if (mImages[id] != null) ids[n++] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * @return number of servos in the snapshot
+	 */
+	public int size() {
+		int n = 0;
+		for (byte[] image : mImages) {
+			if (image != null) n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return true if the servo is in the snapshot
+	 */
+	public boolean contains(int servoID) {
+		return image(servoID) != null;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param address 0 ~ EEP_SIZE-1
+	 * @return register value 0 ~ 255, -1 if not in the snapshot
+	 */
+	public int getValue(int servoID, int address) {
+		byte[] image = image(servoID);
+		if (image == null || address < 0 || address >= EEP_SIZE) return -1;
+		return image[address] & 0xFF;
+	}
+
+	/**
+	 * @param path file name
+	 * @return true - success, false - failure
+	 */
+	public boolean save(String path) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(EEP_SIZE);
+			out.writeByte(size());
+			for (int id = 0; id < mImages.length; id++) {
+				if (mImages[id] == null) continue;
+				out.writeByte(id);
+				out.write(mImages[id]);
+			}
+			out.close();
+			out = null;
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			IO.close(out);
+		}
+	}
+
+	/**
+	 * @param path file written by save()
+	 * @return the snapshot, null on failure
+	 */
+	public static EEPSnapshot load(String path) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				throw new IOException(path + " is not a HerkuleX EEP snapshot");
+			}
+			
+			int size = in.readUnsignedByte();
+			int count = in.readUnsignedByte();
+			EEPSnapshot snapshot = new EEPSnapshot();
+			for (int i = 0; i < count; i++) {
+				int id = in.readUnsignedByte();
+				byte[] image = new byte[Math.max(size, EEP_SIZE)];
+				in.readFully(image, 0, size);
+				if (id < 254) snapshot.put(id, Arrays.copyOf(image, EEP_SIZE));
+			}
+			return snapshot;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			IO.close(in);
+		}
+	}
+}
@@ -27,7 +27,17 @@
 
 package dongburobot.herkulex;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import processing.serial.Serial;
 
 /**
@@ -42,8 +52,18 @@ public class HerkuleX {
 	
 	//public final static String VERSION = "1.0";
 	
-	private final int BASIC_PKT_SIZE 	= 7;
 	private final int WAIT_TIME_BY_ACK 	= 30;
+	private final int READ_RETRIES		= 2;
+	private final long ACK_POLL_INTERVAL = 200000L;	// ns, when serialEvent() is not forwarded
+	
+	private final int READ_REQUEST_SIZE	= 9;		// RAM/EEP read request
+	private final int READ_ACK_OVERHEAD	= 11;		// RAM/EEP read ACK without data
+	private final long READ_TURNAROUND	= 500000L;	// ns, servo response + line turnaround
+	private final int READ_MAX_PASS		= 3;
+	private final int STAT_ACK_SIZE		= 9;
+	
+	private final int EEP_FIRST_WRITABLE = 0x04;	// 0x00 ~ 0x03: model and version
+	private final int EEP_WRITE_TIME	= 20;		// ms
 		
 	// SERVO HERKULEX COMMAND - See Manual p40
 	private final byte HEEPWRITE = 	0x01; 		//Rom write
@@ -76,15 +96,64 @@ public class HerkuleX {
 	
 	private Serial mPort;
 	//private PApplet mParent;
+	private Transport mTransport;
+	
+	static final int SJOG_MAX_SERVO	= 53;		// A SJOG can deal with only 53 motors at one time.
+	private final int IJOG_MAX_SERVO	= 43;		// An IJOG can deal with only 43 motors at one time.
 	
-	private ArrayList<Byte> multipleMoveData;
+	private MoveBuffer multipleMoveData;
+	private MoveBuffer individualMoveData;
 	
 	private ArrayList<Integer> mIDs; 
 	
+	private int mAckTimeout = WAIT_TIME_BY_ACK;
+	private int mReadRetries = READ_RETRIES;
+	private int mReadBudget = 0;
+	private volatile Thread mAckWaiter;
+	
+	private final PacketDecoder mDecoder = new PacketDecoder();
+	private final Packet mAck = new Packet();
+	private final byte[] mReadBuf = new byte[256];
+	
+	private BusArbiter mBus;
+	private final ThreadLocal<Packet> mAcks = new ThreadLocal<Packet>() {
+		protected Packet initialValue() {
+			return new Packet();
+		}
+	};
+	
+	private final StateCache mStateCache = new StateCache();
+	private TelemetryPoller mPoller;
+	
+	private final Object mWorkerLock = new Object();
+	private BusWorker mWorker;
+	
+	private volatile RegisterShadow mShadow;
+	private volatile MetricsRecorder mMetrics;
+	private volatile WireCapture mCapture;
+	private volatile TimeoutProfile mTimeouts;
+	private volatile DeviceRegistry mRegistry;
+	
+	private final int[] mReadIndex = new int[256];		// pipelinedRead() scratch, by ID
+	private boolean[] mReadDone = new boolean[0];
+	private long[] mReadSent = new long[0];
+	
 	public HerkuleX(Serial port) {
+		this(new SerialTransport(port));
 		mPort = port;
 		//mParent = parent;
-		multipleMoveData = new ArrayList<Byte>();
+	}
+	
+	/**
+	 * Use your own byte stream instead of processing.serial.Serial.
+	 * 
+	 * @param transport Transport to the servos
+	 */
+	public HerkuleX(Transport transport) {
+		mTransport = transport;
+		mBus = new BusArbiter(transport);
+		multipleMoveData = new MoveBuffer(false);
+		individualMoveData = new MoveBuffer(true);
 		mIDs = new ArrayList<Integer>();
 	}
 	
@@ -111,6 +180,136 @@ public class HerkuleX {
 		}
 	}
 	
+	/**
+	 * Set the deadline for read commands (getPosition, getSpeed, stat, model)
+	 * 
+	 * A read returns as soon as a valid reply arrives.
+	 * This is only how long it waits when no reply comes.
+	 * With setAdaptiveTimeout(true), only servos that have not answered a few times yet wait this long.
+	 * 
+	 * @param timeout 1 ~ 1000 ms (default: 30 ms)
+	 */
+	public void setAckTimeout(int timeout) {
+		if (timeout < 1 || timeout > 1000) return;
+		mAckTimeout = timeout;
+	}
+	
+	/**
+	 * Get the deadline for read commands
+	 * 
+	 * @return timeout in ms
+	 */
+	public int getAckTimeout() {
+		return mAckTimeout;
+	}
+	
+	/**
+	 * @example HerkuleX_Adaptive_Timeout
+	 * 
+	 * Wait for each servo as long as it needs rather than the fixed ack timeout.
+	 * 
+	 * The wait is the time the request and reply take on the wire at the
+	 * current baudrate plus the response time learned from the replies of
+	 * that servo (see TimeoutProfile). The ack timeout is used for a servo
+	 * until it has answered a few times.
+	 * 
+	 * @param enable true - on, false - off (fixed ack timeout)
+	 */
+	public void setAdaptiveTimeout(boolean enable) {
+		synchronized (mWorkerLock) {
+			if (enable == (mTimeouts != null)) return;
+			mTimeouts = enable ? new TimeoutProfile() : null;
+		}
+	}
+	
+	/**
+	 * @return true if timeouts are learned per servo
+	 */
+	public boolean isAdaptiveTimeout() {
+		return mTimeouts != null;
+	}
+	
+	/**
+	 * @return the profile being learned, null if adaptive timeouts are off
+	 */
+	public TimeoutProfile getTimeoutProfile() {
+		return mTimeouts;
+	}
+	
+	/**
+	 * Use a profile learned before, e.g. one from TimeoutProfile.load().
+	 * 
+	 * @param profile null to go back to the fixed ack timeout
+	 */
+	public void setTimeoutProfile(TimeoutProfile profile) {
+		mTimeouts = profile;
+	}
+	
+	/**
+	 * @example HerkuleX_Read_Retry
+	 * 
+	 * How many times a read is sent again when its reply is broken, from
+	 * another servo or command, or missing.
+	 * 
+	 * A broken reply ends the wait at once: the rest of it is let in and
+	 * dropped, and the request goes out again. All tries of one read share
+	 * the read budget.
+	 * 
+	 * @param retries 0 ~ 10 (default: 2)
+	 */
+	public void setReadRetries(int retries) {
+		if (retries < 0 || retries > 10) return;
+		mReadRetries = retries;
+	}
+	
+	/**
+	 * @return number of times a failed read is sent again
+	 */
+	public int getReadRetries() {
+		return mReadRetries;
+	}
+	
+	/**
+	 * Time one read may take with all its retries.
+	 * 
+	 * With the default 0, a read takes no longer than one wait for its reply
+	 * (the ack timeout, or the learned timeout of the servo). Broken replies
+	 * are retried in what is left of that wait; a missing reply is only retried
+	 * when the budget leaves room for another wait.
+	 * 
+	 * @param budget 0 ~ 1000 ms (default: 0)
+	 */
+	public void setReadBudget(int budget) {
+		if (budget < 0 || budget > 1000) return;
+		mReadBudget = budget;
+	}
+	
+	/**
+	 * @return time one read may take with all its retries, ms (0: one wait)
+	 */
+	public int getReadBudget() {
+		return mReadBudget;
+	}
+	
+	/**
+	 * Wake up a pending read as soon as serial data arrives. (Optional)
+	 * 
+	 * Without it, a pending read checks the port every 0.2 ms.
+	 * Do not read from the port in your own serialEvent().
+	 * 
+	 * ex)  void serialEvent(Serial p) {
+	 * 		  myHerkuleX.serialEvent(p);
+	 * 		}
+	 * 
+	 * @param port Serial port which received data
+	 */
+	public void serialEvent(Serial port) {
+		if (port != mPort || port == null) return;
+		
+		Thread waiter = mAckWaiter;
+		if (waiter != null) LockSupport.unpark(waiter);
+	}
+	
 	/**
 	 * @example HerkuleX_Get_IDs
 	 * 
@@ -135,6 +334,107 @@ public class HerkuleX {
 		return mIDs;
 	}
 	
+	/**
+	 * @example HerkuleX_Get_IDs
+	 * 
+	 * Get connected servos' ID and model, fast.
+	 * 
+	 * Probes are sent back to back, spaced by the time one probe and its reply
+	 * take on the wire at the current baudrate, and replies are picked up by ID
+	 * as they stream in. If the line looks garbled, it scans again with wider spacing.
+	 * It takes about 0.6 s at 115200 bps.
+	 * performIDScan() is the slow, conservative fallback.
+	 * 
+	 * @return ArrayList<ServoInfo> - Servo IDs and models in ID order
+	 */
+	public ArrayList<ServoInfo> performFastIDScan() {
+		final ServoInfo[] found = new ServoInfo[254];
+		int[] servoIDs = new int[254];
+		for (int i = 0; i < servoIDs.length; i++) {
+			servoIDs[i] = i;
+		}
+		
+		// Model No1, No2, Version1, Version2
+		pipelinedRead(HEEPREAD, servoIDs, 0x00, 4, false, new ReadJob() {
+			void accept(int index, Packet ack) {
+				int version = ((ack.get(11) & 0xFF) << 8) | (ack.get(12) & 0xFF);
+				found[index] = new ServoInfo(index, ack.get(9) & 0xFF, version);
+			}
+		});
+		
+		ArrayList<ServoInfo> servos = new ArrayList<ServoInfo>();
+		mIDs.clear();
+		for (int i = 0; i < found.length; i++) {
+			if (found[i] == null) continue;
+			servos.add(found[i]);
+			mIDs.add(i);
+		}
+		
+		return servos;
+	}
+	
+	/**
+	 * @example HerkuleX_Device_Registry
+	 * 
+	 * Find the servos of a known robot in milliseconds.
+	 * 
+	 * The servos saved in path are asked for their model, firmware and
+	 * position limits, all in one pipelined sweep. If every one of them
+	 * answers with what was saved, that is the result. Otherwise, or on the
+	 * first run, the whole line is scanned with performFastIDScan() and the
+	 * result is saved to path for the next start.
+	 * Servos added to a known robot are not found until the file is deleted.
+	 * 
+	 * After this, model() answers from the registry without a read.
+	 * 
+	 * @param path registry file, e.g. sketchPath("robot.hxd")
+	 * @return DeviceRegistry of the servos on the line
+	 */
+	public DeviceRegistry discover(String path) {
+		DeviceRegistry known = new File(path).exists() ? DeviceRegistry.load(path) : null;
+		
+		if (known != null && known.size() > 0) {
+			DeviceRegistry found = readDevices(known.getIDs());
+			if (found.sameAs(known)) {
+				setDeviceRegistry(found);
+				return found;
+			}
+		}
+		
+		ArrayList<ServoInfo> servos = performFastIDScan();
+		int[] servoIDs = new int[servos.size()];
+		for (int i = 0; i < servoIDs.length; i++) {
+			servoIDs[i] = servos.get(i).getID();
+		}
+		
+		DeviceRegistry found = readDevices(servoIDs);
+		found.save(path);
+		setDeviceRegistry(found);
+		return found;
+	}
+	
+	/**
+	 * @return registry from discover(), null before
+	 */
+	public DeviceRegistry getDeviceRegistry() {
+		return mRegistry;
+	}
+	
+	/**
+	 * Use a registry without asking the servos, e.g. DeviceRegistry.load().
+	 * 
+	 * @param registry null to forget it
+	 */
+	public void setDeviceRegistry(DeviceRegistry registry) {
+		mRegistry = registry;
+		if (registry == null) return;
+		
+		mIDs.clear();
+		for (int id : registry.getIDs()) {
+			mIDs.add(id);
+		}
+	}
+	
 	/**
 	 * Set Ack Policy
 	 * 
@@ -142,14 +442,15 @@ public class HerkuleX {
 	 */
 	public void setAckPolicy(int valueACK) {
 		if (valueACK < 0 || valueACK > 2) return;
+		if (isKnown(0xFE, 0x01, 1, valueACK)) return;
 		
-		byte[] optData = new byte[3];
-		optData[0] = 0x34;             	// Address
-		optData[1] = 0x01;             	// Length
-		optData[2] = (byte) valueACK;   // Value. 0=No Replay, 1=Only reply to READ CMD, 2=Always reply
-		
-		byte[] packetBuf = buildPacket((byte) 0xFE, HRAMWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(0xFE, HRAMWRITE);
+		encoder.put(0x01);             // Address: ACK Policy
+		encoder.put(0x01);             // Length
+		encoder.put(valueACK);   		// Value. 0=No Replay, 1=Only reply to READ CMD, 2=Always reply
+		encoder.end();
+		mBus.write(encoder);
 	}
 	
 	/**
@@ -158,14 +459,16 @@ public class HerkuleX {
 	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID 
 	 */
 	public void clearError(int servoID) {
-		byte[] optData = new byte[4];
-		optData[0] = 0x30;               // Address
-		optData[1] = 0x02;               // Length
-		optData[2] = 0x00;               // Write error=0
-		optData[3] = 0x00;               // Write detail error=0
+		if (isKnown(servoID, 0x30, 2, 0x0000)) return;
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMWRITE);
+		encoder.put(0x30);              // Address
+		encoder.put(0x02);              // Length
+		encoder.put(0x00);              // Write error=0
+		encoder.put(0x00);              // Write detail error=0
+		encoder.end();
+		mBus.write(encoder);
 	}
 	
 	/**
@@ -174,13 +477,15 @@ public class HerkuleX {
 	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID 
 	 */
 	public void torqueON(int servoID) {
-		byte[] optData = new byte[3];
-		optData[0] = 0x34;               	// Address
-		optData[1] = 0x01;              	// Length
-		optData[2] = 0x60;               	// 0x60=Torque ON
+		if (isKnown(servoID, 0x34, 1, 0x60)) return;
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMWRITE);
+		encoder.put(0x34);               	// Address
+		encoder.put(0x01);              	// Length
+		encoder.put(0x60);               	// 0x60=Torque ON
+		encoder.end();
+		mBus.write(encoder);
 	}
 	
 	/**
@@ -189,13 +494,15 @@ public class HerkuleX {
 	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID 
 	 */
 	public void torqueOFF(int servoID) {
-		byte[] optData = new byte[3];
-		optData[0] = 0x34;               	// Address
-		optData[1] = 0x01;              	// Length
-		optData[2] = 0x00;               	// 0x60=Torque ON
+		if (isKnown(servoID, 0x34, 1, 0x00)) return;
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMWRITE);
+		encoder.put(0x34);               	// Address
+		encoder.put(0x01);              	// Length
+		encoder.put(0x00);               	// 0x60=Torque ON
+		encoder.end();
+		mBus.write(encoder);
 	}
 	
 	/**
@@ -228,15 +535,18 @@ public class HerkuleX {
 		playTime = (int) (playTime / 11.2f);		// ms --> value
 		led = (byte) (led | 0x02);					// Speed Ctrl Mode
 		
-		byte[] optData = new byte[5];
-		optData[0] = (byte) playTime;  		// Execution time	
-		optData[1] = (byte) speedGoalLSB;
-		optData[2] = (byte) speedGoalMSB;
-		optData[3] = (byte) led;
-		optData[4] = (byte) servoID;
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HSJOG);
+		encoder.put(playTime);  		// Execution time	
+		encoder.put(speedGoalLSB);
+		encoder.put(speedGoalMSB);
+		encoder.put(led);
+		encoder.put(servoID);
+		encoder.end();
+		mBus.write(encoder);
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HSJOG, optData);
-		sendData(packetBuf);
+		RegisterShadow shadow = mShadow;
+		if (shadow != null) shadow.jog(servoID, led);
 	}
 	
 	/**
@@ -245,33 +555,39 @@ public class HerkuleX {
 	 * Get current servo speed (-1023 ~ 1023)
 	 * 
 	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
-	 * @return current speed -1023 ~ 1023 [CW:Negative Value(-), CCW:Positive Value(+)] 
+	 * @return current speed -1023 ~ 1023 [CW:Negative Value(-), CCW:Positive Value(+)], 0 on failure
 	 */
 	public int getSpeed(int servoID) {
 		if ((byte)servoID == 0xFE) return 0;
 		
-		byte[] optData = new byte[2];
-		optData[0] = 0x40;               	// Address
-		optData[1] = 0x02;              	// Length
-		
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMREAD, optData);
-		sendData(packetBuf);
-
-	    try {
-			Thread.sleep(WAIT_TIME_BY_ACK);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		try {
+			return readSpeed(servoID);
+		} catch (ReadException e) {
+			return 0;
 		}
-	    
-	    byte[] readBuf = readData();
-	    
-	    if (!isRightPacket(readBuf)) {
-	    	return 0;
-	    }
+	}
+	
+	/**
+	 * @example HerkuleX_Read_Retry
+	 * 
+	 * Get current servo speed, or why it could not be read
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return current speed -1023 ~ 1023 [CW:Negative Value(-), CCW:Positive Value(+)]
+	 * @throws ReadException no valid reply within the read retries and budget
+	 */
+	public int readSpeed(int servoID) throws ReadException {
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMREAD);
+		encoder.put(0x40);               	// Address
+		encoder.put(0x02);              	// Length
+		encoder.end();
+		
+		Packet ack = transact(encoder);
 	   
-	    int speedy = ((readBuf[10] & 0x03) << 8) | (readBuf[9] & 0xFF);
+	    int speedy = ((ack.get(10) & 0x03) << 8) | (ack.get(9) & 0xFF);
 	    
-	    if ((readBuf[10] & 0x40) == 0x40)
+	    if ((ack.get(10) & 0x40) == 0x40)
 	    	speedy *= -1;
 	    
 	    return speedy;
@@ -298,15 +614,18 @@ public class HerkuleX {
 		playTime = (int) (playTime / 11.2f);	// ms --> value
 		led = (byte) (led & 0xFD);				// Pos Ctrl Mode
 		
-		byte[] optData = new byte[5];
-		optData[0] = (byte) playTime;  		// Execution time	
-		optData[1] = (byte) posLSB;
-		optData[2] = (byte) posMSB;
-		optData[3] = (byte) led;
-		optData[4] = (byte) servoID;
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HSJOG);
+		encoder.put(playTime);  		// Execution time	
+		encoder.put(posLSB);
+		encoder.put(posMSB);
+		encoder.put(led);
+		encoder.put(servoID);
+		encoder.end();
+		mBus.write(encoder);
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HSJOG, optData);
-		sendData(packetBuf);
+		RegisterShadow shadow = mShadow;
+		if (shadow != null) shadow.jog(servoID, led);
 	}
 	
 	/**
@@ -316,32 +635,546 @@ public class HerkuleX {
 	 * @return current position 0 ~ 1023 (-1: failure)
 	 * @example HerkuleX_Pos_Ctrl
 	 */
-	public int getPosition(int servoID) {
-		if ((byte)servoID == 0xFE) return -1;
-		
-		byte[] optData = new byte[2];
-		optData[0] = 0x3A;               	// Address
-		optData[1] = 0x02;              	// Length
-		
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMREAD, optData);
-		sendData(packetBuf);
-
-	    try {
-			Thread.sleep(WAIT_TIME_BY_ACK);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	public int getPosition(int servoID) {
+		if ((byte)servoID == 0xFE) return -1;
+		
+		try {
+			return readPosition(servoID);
+		} catch (ReadException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * @example HerkuleX_Read_Retry
+	 * 
+	 * Get servo position, or why it could not be read
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return current position 0 ~ 1023
+	 * @throws ReadException no valid reply within the read retries and budget
+	 */
+	public int readPosition(int servoID) throws ReadException {
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMREAD);
+		encoder.put(0x3A);               	// Address
+		encoder.put(0x02);              	// Length
+		encoder.end();
+		
+		Packet ack = transact(encoder);
+	   
+		int pos = ((ack.get(10) & 0x03) << 8) | (ack.get(9) & 0xFF);
+	    return pos;
+	}
+
+	/**
+	 * @example HerkuleX_Read_State
+	 * 
+	 * Read status, position, speed, PWM, voltage and temperature with one RAM read
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param state filled with the servo state on success
+	 * @return true - success, false - failure
+	 */
+	public boolean readState(int servoID, ServoState state) {
+		try {
+			readStateOrFail(servoID, state);
+			return true;
+		} catch (ReadException e) {
+			return false;
+		}
+	}
+	
+	private void readStateOrFail(int servoID, ServoState state) throws ReadException {
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMREAD);
+		encoder.put(ServoState.RAM_STATUS_ERROR);	// Address
+		encoder.put(ServoState.RAM_READ_LENGTH);	// Length
+		encoder.end();
+		
+		Packet ack = transact(encoder);
+		
+		state.decode(ack);
+		mStateCache.publish(state);
+	}
+	
+	/**
+	 * @example HerkuleX_Read_State
+	 * 
+	 * Read status, position, speed, PWM, voltage and temperature with one RAM read
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return servo state (null: failure)
+	 */
+	public ServoState readState(int servoID) {
+		ServoState state = new ServoState();
+		if (!readState(servoID, state)) return null;
+		return state;
+	}
+	
+	/**
+	 * @example HerkuleX_Multi_Read
+	 * 
+	 * Read the position of many servos in one sweep.
+	 * 
+	 * The requests go out back to back, each as soon as the reply before it
+	 * is in or its time on the wire is up, and replies are matched by ID.
+	 * Servos that do not reply do not hold up the others.
+	 * Nothing is allocated per servo.
+	 * 
+	 * @param servoIDs servos to read, each ID once
+	 * @param positions filled with 0 ~ 1023, -1 on failure
+	 * @param valid set to true where the read succeeded
+	 * @return number of servos read
+	 */
+	public int readPositions(int[] servoIDs, final int[] positions, final boolean[] valid) {
+		Arrays.fill(positions, 0, servoIDs.length, -1);
+		Arrays.fill(valid, 0, servoIDs.length, false);
+		
+		return pipelinedRead(HRAMREAD, servoIDs, 0x3A, 0x02, false, new ReadJob() {
+			void accept(int index, Packet ack) {
+				positions[index] = ((ack.get(10) & 0x03) << 8) | (ack.get(9) & 0xFF);
+				valid[index] = true;
+			}
+		});
+	}
+	
+	/**
+	 * @example HerkuleX_Multi_Read
+	 * 
+	 * Read the state of many servos in one sweep. See readPositions().
+	 * 
+	 * @param servoIDs servos to read, each ID once
+	 * @param states one ServoState per servo, filled on success
+	 * @param valid set to true where the read succeeded
+	 * @return number of servos read
+	 */
+	public int readStates(int[] servoIDs, final ServoState[] states, final boolean[] valid) {
+		Arrays.fill(valid, 0, servoIDs.length, false);
+		
+		return pipelinedRead(HRAMREAD, servoIDs, ServoState.RAM_STATUS_ERROR, ServoState.RAM_READ_LENGTH, false,
+				new ReadJob() {
+			void accept(int index, Packet ack) {
+				states[index].decode(ack);
+				mStateCache.publish(states[index]);
+				valid[index] = true;
+			}
+		});
+	}
+	
+	/**
+	 * @example HerkuleX_Polling
+	 * 
+	 * Start reading servo states in the background.
+	 * 
+	 * A background thread calls readState() for every servo in servoIDs,
+	 * rate times per second. Get the results without waiting on the bus
+	 * with getCachedState(), getCachedPosition() and getCachedAngle().
+	 * Other commands still work while polling; they take turns on the bus.
+	 * 
+	 * @param servoIDs 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param rate sweeps per second (e.g. 50)
+	 */
+	public void startPolling(int[] servoIDs, float rate) {
+		if (rate <= 0 || servoIDs.length == 0) return;
+		
+		stopPolling();
+		mPoller = new TelemetryPoller(this, servoIDs, rate);
+		mPoller.start();
+	}
+	
+	/**
+	 * Stop reading servo states in the background.
+	 * The cached states are kept.
+	 */
+	public void stopPolling() {
+		if (mPoller == null) return;
+		
+		mPoller.stop();
+		mPoller = null;
+	}
+	
+	/**
+	 * Latest servo state read by polling or readState(). Does not wait.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param state filled with the latest state
+	 * @return false if the servo has never been read
+	 */
+	public boolean getCachedState(int servoID, ServoState state) {
+		return mStateCache.read(servoID, state);
+	}
+	
+	/**
+	 * Latest servo position read by polling or readState(). Does not wait.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return position 0 ~ 1023 (-1: never read)
+	 */
+	public int getCachedPosition(int servoID) {
+		return mStateCache.getPosition(servoID);
+	}
+	
+	/**
+	 * Latest servo angle read by polling or readState(). Does not wait.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return angle -166.7 ~ 166.7 degrees (0: never read)
+	 */
+	public float getCachedAngle(int servoID) {
+		int pos = mStateCache.getPosition(servoID);
+		if (pos < 0) return 0;
+		return (pos-512) * 0.325f;
+	}
+	
+	/**
+	 * How old the cached state of a servo is.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return age in ms (-1: never read)
+	 */
+	public float getCachedAge(int servoID) {
+		long time = mStateCache.getTime(servoID);
+		if (time == 0) return -1;
+		return (System.nanoTime() - time) / 1000000.0f;
+	}
+	
+	/**
+	 * Keep a copy of the RAM registers of every servo and do not send
+	 * setLed, torqueON, torqueOFF, setAckPolicy, clearError and
+	 * writeRegistryRAM when the servo already holds that value.
+	 * 
+	 * The copy is updated by writes and replies and forgotten by reboots.
+	 * Errors are only seen in replies: if a servo can fault or lose power
+	 * without being read, call invalidateShadow() now and then.
+	 * 
+	 * @param enable true - on, false - off (everything is sent)
+	 */
+	public void setShadowEnabled(boolean enable) {
+		if (enable == (mShadow != null)) return;
+		mShadow = enable ? new RegisterShadow() : null;
+	}
+	
+	/**
+	 * @return true if redundant RAM writes are dropped
+	 */
+	public boolean isShadowEnabled() {
+		return mShadow != null;
+	}
+	
+	/**
+	 * Forget the known RAM registers of a servo, so the next writes are sent.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID (all servos)
+	 */
+	public void invalidateShadow(int servoID) {
+		RegisterShadow shadow = mShadow;
+		if (shadow != null) shadow.forget(servoID);
+	}
+	
+	/**
+	 * @return number of RAM writes dropped because the servo already held the value
+	 */
+	public long getShadowHits() {
+		RegisterShadow shadow = mShadow;
+		return shadow == null ? 0 : shadow.getHits();
+	}
+	
+	/**
+	 * @return number of RAM writes sent while the shadow was on
+	 */
+	public long getShadowMisses() {
+		RegisterShadow shadow = mShadow;
+		return shadow == null ? 0 : shadow.getMisses();
+	}
+	
+	/**
+	 * Bus time saved is getShadowSavedBytes() * 10 / baudrate seconds.
+	 * 
+	 * @return number of bytes not sent thanks to the shadow
+	 */
+	public long getShadowSavedBytes() {
+		RegisterShadow shadow = mShadow;
+		return shadow == null ? 0 : shadow.getSavedBytes();
+	}
+	
+	/**
+	 * @example HerkuleX_Metrics
+	 * 
+	 * Count bytes, timeouts and checksum errors and time every request and reply.
+	 * Round trips are kept per command and servo ID in histograms.
+	 * Off by default; when off nothing is counted.
+	 * 
+	 * @param enable true - on, false - off
+	 */
+	public void setMetricsEnabled(boolean enable) {
+		synchronized (mWorkerLock) {
+			if (enable == (mMetrics != null)) return;
+			setMetrics(enable ? new MetricsRecorder(this, mDecoder.getChecksumErrors(), mDecoder.getDroppedBytes()) : null);
+		}
+	}
+	
+	/**
+	 * @return true if bus metrics are recorded
+	 */
+	public boolean isMetricsEnabled() {
+		return mMetrics != null;
+	}
+	
+	/**
+	 * @return counters and round-trip times so far, null if metrics are off
+	 */
+	public BusMetrics getMetrics() {
+		MetricsRecorder metrics = mMetrics;
+		return metrics == null ? null : metrics.snapshot();
+	}
+	
+	/**
+	 * Start counting again from zero.
+	 */
+	public void resetMetrics() {
+		synchronized (mWorkerLock) {
+			if (mMetrics == null) return;
+			setMetrics(new MetricsRecorder(this, mDecoder.getChecksumErrors(), mDecoder.getDroppedBytes()));
+		}
+	}
+	
+	/**
+	 * Publish the metrics to JMX as dongburobot.herkulex:type=HerkuleX,name=[name]
+	 * so they can be watched with JConsole. Turns metrics on.
+	 * 
+	 * @param name unique name of this port, e.g. "COM3"
+	 * @return true on success
+	 */
+	public boolean registerMBean(String name) {
+		setMetricsEnabled(true);
+		
+		try {
+			ObjectName objectName = new ObjectName("dongburobot.herkulex:type=HerkuleX,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+			server.registerMBean(new StandardMBean(new MetricsRecorder.Bean(this), HerkuleXMetricsMXBean.class, true), objectName);
+			return true;
+		} catch (JMException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * @example HerkuleX_Capture
+	 * 
+	 * Log every byte sent and received, with the time in ns, to a file.
+	 * The file is written by a background thread; the bus never waits for the disk.
+	 * Play it back with ReplayTransport.
+	 * 
+	 * @param path log file, overwritten
+	 * @return true on success
+	 */
+	public boolean startCapture(String path) {
+		synchronized (mWorkerLock) {
+			stopCapture();
+			
+			WireCapture capture = WireCapture.open(path, mTransport.getBaudRate());
+			if (capture == null) return false;
+			
+			mCapture = capture;
+			mBus.setCapture(capture);
+			return true;
+		}
+	}
+	
+	/**
+	 * Stop logging and close the file.
+	 */
+	public void stopCapture() {
+		WireCapture capture;
+		synchronized (mWorkerLock) {
+			capture = mCapture;
+			if (capture == null) return;
+			
+			mCapture = null;
+			mBus.setCapture(null);
+		}
+		capture.close();
+	}
+	
+	/**
+	 * @return true while logging the bus
+	 */
+	public boolean isCapturing() {
+		return mCapture != null;
+	}
+	
+	/**
+	 * @return number of port writes and reads logged since startCapture()
+	 */
+	public long getCaptureFrames() {
+		WireCapture capture = mCapture;
+		return capture == null ? 0 : capture.getFrames();
+	}
+	
+	/**
+	 * @return number of port writes and reads lost because the disk could not keep up
+	 */
+	public long getCaptureDropped() {
+		WireCapture capture = mCapture;
+		return capture == null ? 0 : capture.getDropped();
+	}
+	
+	/**
+	 * @example HerkuleX_Async
+	 * 
+	 * Get servo position without blocking the calling thread.
+	 * 
+	 * Asynchronous commands are queued and run one by one on a bus thread.
+	 * The future completes on that thread, or fails with a ReadException
+	 * (a TimeoutException) when no valid reply comes within the read retries and budget.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return current position 0 ~ 1023
+	 */
+	public CompletableFuture<Integer> getPositionAsync(final int servoID) {
+		return worker().read(new Callable<Integer>() {
+			public Integer call() throws ReadException {
+				return readPosition(servoID);
+			}
+		});
+	}
+	
+	/**
+	 * @example HerkuleX_Async
+	 * 
+	 * Get servo position in degrees without blocking the calling thread.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return current angle -166.7 ~ 166.7 degrees
+	 */
+	public CompletableFuture<Float> getAngleAsync(final int servoID) {
+		return worker().read(new Callable<Float>() {
+			public Float call() throws ReadException {
+				return (readPosition(servoID)-512) * 0.325f;
+			}
+		});
+	}
+	
+	/**
+	 * @example HerkuleX_Async
+	 * 
+	 * Read servo state without blocking the calling thread. See readState().
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return servo state
+	 */
+	public CompletableFuture<ServoState> readStateAsync(final int servoID) {
+		return worker().read(new Callable<ServoState>() {
+			public ServoState call() throws ReadException {
+				ServoState state = new ServoState();
+				readStateOrFail(servoID, state);
+				return state;
+			}
+		});
+	}
+	
+	/**
+	 * Get servo status without blocking the calling thread. See stat().
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return servo status
+	 */
+	public CompletableFuture<Byte> statAsync(final int servoID) {
+		return worker().read(new Callable<Byte>() {
+			public Byte call() throws ReadException {
+				return readStatus(servoID);
+			}
+		});
+	}
+	
+	/**
+	 * @example HerkuleX_Async
+	 * 
+	 * Queue moveOne() on the bus thread and return at once.
+	 * Writes queued back to back go out together.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID
+	 * @param goalPos 0 ~ 1023
+	 * @param playTime 0 ~ 2856ms
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public void moveOneAsync(final int servoID, final int goalPos, final int playTime, final int led) {
+		worker().write(new Runnable() {
+			public void run() {
+				moveOne(servoID, goalPos, playTime, led);
+			}
+		});
+	}
+	
+	/**
+	 * Queue moveOneAngle() on the bus thread and return at once.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID
+	 * @param angle -166 ~ 166 degrees
+	 * @param playTime 0 ~ 2856 ms
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public void moveOneAngleAsync(final int servoID, final float angle, final int playTime, final int led) {
+		worker().write(new Runnable() {
+			public void run() {
+				moveOneAngle(servoID, angle, playTime, led);
+			}
+		});
+	}
+	
+	/**
+	 * Queue moveSpeedOne() on the bus thread and return at once.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID
+	 * @param goalSpeed -1023 ~ 1023 [CW:Negative Value(-), CCW:Positive Value(+)]
+	 * @param playTime 0 ~ 2856ms
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public void moveSpeedOneAsync(final int servoID, final int goalSpeed, final int playTime, final int led) {
+		worker().write(new Runnable() {
+			public void run() {
+				moveSpeedOne(servoID, goalSpeed, playTime, led);
+			}
+		});
+	}
+	
+	/**
+	 * Queue setLed() on the bus thread and return at once.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public void setLedAsync(final int servoID, final int led) {
+		worker().write(new Runnable() {
+			public void run() {
+				setLed(servoID, led);
+			}
+		});
+	}
+	
+	/**
+	 * Stop the bus thread of the asynchronous commands.
+	 * Reads still queued are cancelled. It starts again with the next asynchronous command.
+	 */
+	public void stopAsync() {
+		BusWorker worker;
+		synchronized (mWorkerLock) {
+			worker = mWorker;
+			mWorker = null;
 		}
-	    
-	    byte[] readBuf = readData();
-	    
-	    if (!isRightPacket(readBuf)) {
-	    	return -1;
-	    }
-	   
-		int pos = ((readBuf[10] & 0x03) << 8) | (readBuf[9] & 0xFF);
-	    return pos;
+		if (worker != null) worker.stop();
 	}
-
+	
+	BusWorker worker() {
+		synchronized (mWorkerLock) {
+			if (mWorker == null) mWorker = new BusWorker(this);
+			return mWorker;
+		}
+	}
+	
 	/**
 	 * Move one servo to an angle between -167 and 167
 	 * 
@@ -392,13 +1225,7 @@ public class HerkuleX {
 		int posMSB = (goal & 0XFF00) >> 8;	// LSB Pos
 		led = (byte) (led & 0xFD);			// Pos Ctrl Mode
 			
-		byte[] optData = new byte[4];
-		optData[0] = (byte) posLSB;
-		optData[1] = (byte) posMSB;
-		optData[2] = (byte) led;
-		optData[3] = (byte) servoID;
-
-		addData(optData);	//add servo data to list, pos mode
+		multipleMoveData.put(servoID, posLSB, posMSB, led, 0);	//add servo data to list, pos mode
 	}
 	
 	/**
@@ -454,25 +1281,7 @@ public class HerkuleX {
 
 		led = (byte) (led | 0x02);					// Speed Ctrl Mode
 		
-		byte[] optData = new byte[4];
-		optData[0] = (byte) speedGoalLSB;
-		optData[1] = (byte) speedGoalMSB;
-		optData[2] = (byte) led;
-		optData[3] = (byte) servoID;
-		
-		addData(optData);		//add servo data to list, speed mode
-	}
-	
-	// add data to variable list servo for syncro execution
-	private void addData(byte[] optData)
-	{
-		if (multipleMoveData.size() >= 4*53) {	// A SJOG can deal with only 53 motors at one time. 
-			return;
-		}
-		
-		for (int i = 0; i < optData.length; i++) {
-			multipleMoveData.add(optData[i]);
-		}
+		multipleMoveData.put(servoID, speedGoalLSB, speedGoalMSB, led, 0);	//add servo data to list, speed mode
 	}
 	
 	/**
@@ -480,31 +1289,162 @@ public class HerkuleX {
 	 * 
 	 * Move(Turn) all servos with the same execution time
 	 * 
+	 * Adding the same servo twice keeps the last one.
+	 * More than 53 servos are sent as several S_JOG packets in one write.
+	 * 
 	 * ex)  addMove(0, 512, HerkuleX.LED_RED);
 	 * 		addAngle(1, 90.5f, HerkuleX.LED_GREEN);
 	 * 		addSpeed(2, -300, HerkuleX.LED_BLUE);
 	 * 		actionAll(1000);
 	 * 
-	 * @param playTime 0 ~ 2865 ms 
+	 * @param playTime 0 ~ 2856 ms 
 	 */
 	public void actionAll(int playTime)
 	{
 		if ((playTime <0) || (playTime > 2856)) return;
 		
-		int optDataSize = multipleMoveData.size();
-		if (optDataSize < 4) return;
+		PacketEncoder encoder = mBus.encoder();
+		if (encodeActionAll(encoder, playTime) == 0) return;
+		mBus.write(encoder);
+	}
+	
+	/**
+	 * @example HerkuleX_Individual_Movement
+	 * 
+	 * Add one servo movement data with its own execution time
+	 *
+	 * ex)  addMove(0, 512, HerkuleX.LED_RED, 500);
+	 *		addMove(1, 235, HerkuleX.LED_GREEN, 1000);
+	 *		addMove(2, 789, HerkuleX.LED_BLUE, 2000);
+	 *		actionAllIndividual(); 
+	 *
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param goal 0 ~ 1023
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 * @param playTime 0 ~ 2856 ms
+	 */
+	public void addMove(int servoID, int goal, int led, int playTime)
+	{
+		if (goal > 1023 || goal < 0) return;				//0 <--> 1023 range
+		if ((playTime <0) || (playTime > 2856)) return;
 		
-		byte[] optData = new byte[optDataSize + 1];
+		// Position definition
+		int posLSB = goal & 0X00FF;			// MSB Pos
+		int posMSB = (goal & 0XFF00) >> 8;	// LSB Pos
+		led = (byte) (led & 0xFD);			// Pos Ctrl Mode
+		playTime = (int) (playTime / 11.2f);	// ms --> value
 		
-		optData[0] = (byte) playTime;
-		for (int i = 0; i < optDataSize; i++) {
-			optData[i+1] = multipleMoveData.get(i);
-		}
+		individualMoveData.put(servoID, posLSB, posMSB, led, playTime);	//add servo data to list, pos mode
+	}
+	
+	/**
+	 * @example HerkuleX_Individual_Movement
+	 * 
+	 * Add one servo movement data in degrees with its own execution time
+	 *
+	 * ex)  addAngle(0, -90.5f, HerkuleX.LED_RED, 500);
+	 *		addAngle(1, 0, HerkuleX.LED_BLUE, 1000);
+	 *		addAngle(2, 90.5f, HerkuleX.LED_GREEN, 2000);
+	 *		actionAllIndividual(); 
+	 *
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param angle -167 ~ 167 degrees
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 * @param playTime 0 ~ 2856 ms
+	 */
+	public void addAngle(int servoID, float angle, int led, int playTime)
+	{
+		if (angle > 167.0|| angle < -167.0) return; // out of the range	
+		int position = (int)(angle/0.325) + 512;
+		addMove(servoID, position, led, playTime);
+	}
+	
+	/**
+	 * @example HerkuleX_Individual_Movement
+	 * 
+	 * Add one servo infinite turn speed data with its own execution time
+	 *
+	 * ex)  addSpeed(0, 512, HerkuleX.LED_RED, 500);
+	 *		addSpeed(1, -512, HerkuleX.LED_GREEN, 1000);
+	 *		actionAllIndividual(); 
+	 *
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param goalSpeed -1023 ~ 1023 [CW:Negative Value(-), CCW:Positive Value(+)]
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 * @param playTime 0 ~ 2856 ms
+	 */
+	public void addSpeed(int servoID, int goalSpeed, int led, int playTime)
+	{
+		if (goalSpeed > 1023 || goalSpeed < -1023) return;       // speed (goal) non correct
+		if ((playTime <0) || (playTime > 2856)) return;
 		
-		byte[] packetBuf = buildPacket((byte)0xFE, HSJOG, optData);
-		sendData(packetBuf);
+		int goalSpeedSign;
+		if (goalSpeed < 0) {
+			goalSpeedSign = (-1) * goalSpeed;
+			goalSpeedSign |= 0x4000; 
+		} 
+		else {
+			goalSpeedSign = goalSpeed;
+		}
+
+		int speedGoalLSB = goalSpeedSign & 0X00FF; 		       // MSB speedGoal 
+		int speedGoalMSB = (goalSpeedSign & 0xFF00) >> 8;      // LSB speedGoal 
 
-		multipleMoveData.clear();
+		led = (byte) (led | 0x02);					// Speed Ctrl Mode
+		playTime = (int) (playTime / 11.2f);		// ms --> value
+		
+		individualMoveData.put(servoID, speedGoalLSB, speedGoalMSB, led, playTime);	//add servo data to list, speed mode
+	}
+	
+	/**
+	 * @example HerkuleX_Individual_Movement
+	 * 
+	 * Move(Turn) all servos, each with its own execution time, in one packet
+	 * 
+	 * Adding the same servo twice keeps the last one.
+	 * More than 43 servos are sent as several I_JOG packets in one write.
+	 * 
+	 * ex)  addMove(0, 512, HerkuleX.LED_RED, 500);
+	 * 		addAngle(1, 90.5f, HerkuleX.LED_GREEN, 1000);
+	 * 		addSpeed(2, -300, HerkuleX.LED_BLUE, 2000);
+	 * 		actionAllIndividual();
+	 */
+	public void actionAllIndividual()
+	{
+		PacketEncoder encoder = mBus.encoder();
+		if (encodeActionAllIndividual(encoder) == 0) return;
+		mBus.write(encoder);
+	}
+	
+	// S_JOG packets of the queued moves, playTime in ms. Returns the number of servos.
+	int encodeActionAll(PacketEncoder encoder, int playTime) {
+		playTime = (int) (playTime / 11.2f);	// ms --> value
+		return multipleMoveData.writeTo(encoder, HSJOG, SJOG_MAX_SERVO, playTime, mShadow);
+	}
+	
+	// I_JOG packets of the queued moves. Returns the number of servos.
+	int encodeActionAllIndividual(PacketEncoder encoder) {
+		return individualMoveData.writeTo(encoder, HIJOG, IJOG_MAX_SERVO, -1, mShadow);
+	}
+	
+	// Send packets that were encoded outside of the bus encoder.
+	void write(PacketEncoder encoder) {
+		mBus.write(encoder);
+	}
+	
+	BusArbiter bus() {
+		return mBus;
+	}
+	
+	RegisterShadow shadow() {
+		return mShadow;
+	}
+	
+	// Send packets that were encoded ahead of time.
+	void write(byte[] buf, int off, int len) {
+		RegisterShadow shadow = mShadow;
+		if (shadow != null) shadow.forgetAddress(0x35);	// JOG entries set the LED
+		mBus.write(buf, off, len);
 	}
 	 
 	/**
@@ -515,18 +1455,19 @@ public class HerkuleX {
 	 */
 	public void setLed(int servoID, int led)
 	{
-		byte[] optData = new byte[3];
-		optData[0] = 0x35;               	// Address
-		optData[1] = 0x01;              	// Length
-		
 		byte led2 = 0x00;
 		if ((led & LED_GREEN) == LED_GREEN) led2 |= 0x01;
 		if ((led & LED_BLUE) == LED_BLUE) led2 |= 0x02;
 		if ((led & LED_RED) == LED_RED) led2 |= 0x04;
+		if (isKnown(servoID, 0x35, 1, led2)) return;
 		
-		optData[2] = led2;
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMWRITE);
+		encoder.put(0x35);               	// Address
+		encoder.put(0x01);              	// Length
+		encoder.put(led2);
+		encoder.end();
+		mBus.write(encoder);
 	}
 	
 	/**
@@ -537,8 +1478,13 @@ public class HerkuleX {
 	public void reboot(int servoID) {
 		if ((byte)servoID == 0xFE) return;
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HREBOOT, null);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HREBOOT);
+		encoder.end();
+		mBus.write(encoder);
+		
+		RegisterShadow shadow = mShadow;
+		if (shadow != null) shadow.forget(servoID);		// RAM is reloaded from EEP
 	}
 	
 	// 
@@ -560,52 +1506,55 @@ public class HerkuleX {
 	{
 		if ((byte)servoID == 0xFE) return 0x00;
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HSTAT, null);
-		sendData(packetBuf);
-		
-	    try {
-			Thread.sleep(WAIT_TIME_BY_ACK);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+		try {
+			return readStatus(servoID);
+		} catch (ReadException e) {
+			return -1;
 		}
+	}
+	
+	/**
+	 * @example HerkuleX_Read_Retry
+	 * 
+	 * Servo Status, or why it could not be read
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return servo status, see stat()
+	 * @throws ReadException no valid reply within the read retries and budget
+	 */
+	public byte readStatus(int servoID) throws ReadException {
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HSTAT);
+		encoder.end();
 		
-		byte[] readBuf = readData();
-	    
-	    if (!isRightPacket(readBuf)) {
-	    	return -1;
-	    }
-
-		return readBuf[7];			// return status
+		Packet ack = transact(encoder);
+		return ack.get(7);			// return status
 	}
 	
 	/**
 	 * Model
 	 * 
+	 * Servos in the registry of discover() are not read.
+	 * 
 	 * @param servoID
 	 * @return 1 = DRS-0101, 2 = DRS-0201
 	 */
 	public byte model(int servoID)
 	{
-		byte[] optData = new byte[2];
-		optData[0] = 0x00;               	// Address
-		optData[1] = 0x01;              	// Length
+		DeviceRegistry registry = mRegistry;
+		if (registry != null && registry.contains(servoID)) return (byte) registry.getModel(servoID);
+		
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HEEPREAD);
+		encoder.put(0x00);               	// Address
+		encoder.put(0x01);              	// Length
+		encoder.end();
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HEEPREAD, optData);
-		sendData(packetBuf);
-	  	
 		try {
-			Thread.sleep(WAIT_TIME_BY_ACK);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+			return transact(encoder).get(9);	// return model
+		} catch (ReadException e) {
+			return -1;
 		}
-		 
-		byte[] readBuf = readData();
-	    
-	    if (!isRightPacket(readBuf)) {
-	    	return -1;
-	    }
-
-		return readBuf[8];			// return model
 	}
 	
 	/**
@@ -628,15 +1577,16 @@ public class HerkuleX {
 		
 		if (getPosition(ID_Old) == -1) return false;
 		
-		byte[] optData = new byte[3];
-		optData[0] = 0x06;               	// Address
-		optData[1] = 0x01;              	// Length
-		optData[2] = (byte) ID_New;
-		
-		byte[] packetBuf = buildPacket((byte)ID_Old, HEEPWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(ID_Old, HEEPWRITE);
+		encoder.put(0x06);               	// Address
+		encoder.put(0x01);              	// Length
+		encoder.put(ID_New);
+		encoder.end();
+		mBus.write(encoder);
 		
 		reboot(ID_Old);
+		invalidateShadow(ID_New);
 		return true;
 	}
 	
@@ -652,13 +1602,15 @@ public class HerkuleX {
 	 */
 	public void writeRegistryRAM(int servoID, int address, int writeByte)
 	{
-		byte[] optData = new byte[3];
-		optData[0] = (byte) address;        // Address
-		optData[1] = 0x01;              	// Length
-		optData[2] = (byte) writeByte;
+		if (isKnown(servoID, address, 1, writeByte)) return;
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HRAMWRITE, optData);
-		sendData(packetBuf);
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HRAMWRITE);
+		encoder.put(address);        		// Address
+		encoder.put(0x01);              	// Length
+		encoder.put(writeByte);
+		encoder.end();
+		mBus.write(encoder);
 	}
 
 	/**
@@ -676,89 +1628,631 @@ public class HerkuleX {
 	 */
 	public void writeRegistryEEP(int servoID, int address, int writeByte)
 	{
-		byte[] optData = new byte[3];
-		optData[0] = (byte) address;        // Address
-		optData[1] = 0x01;              	// Length
-		optData[2] = (byte) writeByte;
+		PacketEncoder encoder = mBus.encoder();
+		encoder.begin(servoID, HEEPWRITE);
+		encoder.put(address);        		// Address
+		encoder.put(0x01);              	// Length
+		encoder.put(writeByte);
+		encoder.end();
+		mBus.write(encoder);
+	}
+	
+	/**
+	 * @example HerkuleX_EEP_Backup
+	 * 
+	 * Read all EEP registers of many servos at once.
+	 * 
+	 * Requests are pipelined like performFastIDScan() and servos that did not
+	 * answer are asked again, so 20 servos take well under a second.
+	 * 
+	 * @param servoIDs 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return EEPSnapshot of the servos that replied
+	 */
+	public EEPSnapshot backupEEP(int[] servoIDs) {
+		EEPSnapshot snapshot = new EEPSnapshot();
+		readEEP(servoIDs, snapshot);
+		return snapshot;
+	}
+	
+	/**
+	 * @example HerkuleX_EEP_Backup
+	 * 
+	 * Write a snapshot back to the same servos.
+	 * 
+	 * Only the registers that differ are written, merged into as few packets
+	 * as possible, and everything is read back to check it.
+	 * Model and version (0x00 ~ 0x03) are read only and never written.
+	 * The servos use the new values after reboot().
+	 * 
+	 * @param snapshot from backupEEP() or EEPSnapshot.load()
+	 * @return number of servos whose registers all match the snapshot
+	 */
+	public int restoreEEP(EEPSnapshot snapshot) {
+		int[] servoIDs = snapshot.getIDs();
+		return restoreEEP(snapshot, servoIDs, servoIDs);
+	}
+	
+	/**
+	 * @example HerkuleX_EEP_Backup
+	 * 
+	 * Copy the saved registers of one servo into another one,
+	 * e.g. a replacement servo still on the factory ID 253.
+	 * 
+	 * The ID register is copied too: after reboot(targetID) the target
+	 * answers to servoID, so remove the old servo first.
+	 * 
+	 * @param snapshot from backupEEP() or EEPSnapshot.load()
+	 * @param servoID servo in the snapshot 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param targetID servo to write 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return true if all registers of the target match
+	 */
+	public boolean restoreEEP(EEPSnapshot snapshot, int servoID, int targetID) {
+		return restoreEEP(snapshot, new int[] { servoID }, new int[] { targetID }) == 1;
+	}
+	
+	// Lock the bus for a transaction. See BusArbiter.
+	void lockBus() {
+		mBus.lock();
+	}
+	
+	void unlockBus() {
+		mBus.unlock();
+	}
+	
+	MetricsRecorder metrics() {
+		return mMetrics;
+	}
+	
+	private void setMetrics(MetricsRecorder metrics) {
+		mMetrics = metrics;
+		mBus.setMetrics(metrics);
+	}
+	
+	long checksumErrors() {
+		return mDecoder.getChecksumErrors();
+	}
+	
+	long droppedBytes() {
+		return mDecoder.getDroppedBytes();
+	}
+	
+	int baudRate() {
+		return mTransport.getBaudRate();
+	}
+	
+	// Time to send or receive n bytes at the current baudrate (8N1)
+	private long wireTime(int n) {
+		return n * 10 * 1000000000L / mTransport.getBaudRate();
+	}
+	
+	// One pass of performFastIDScan(): probe 0 ~ 253 every slot ns,
+	// then wait one ack timeout for the last replies.
+	private int readEEP(final int[] servoIDs, final EEPSnapshot dst) {
+		return pipelinedRead(HEEPREAD, servoIDs, 0x00, EEPSnapshot.EEP_SIZE, true, new ReadJob() {
+			void accept(int index, Packet ack) {
+				byte[] image = new byte[EEPSnapshot.EEP_SIZE];
+				for (int i = 0; i < image.length; i++) {
+					image[i] = ack.get(9 + i);
+				}
+				dst.put(servoIDs[index], image);
+			}
+		});
+	}
+	
+	// Model, firmware and position limits of the servos that replied
+	private DeviceRegistry readDevices(final int[] servoIDs) {
+		final DeviceRegistry registry = new DeviceRegistry();
+		pipelinedRead(HEEPREAD, servoIDs, 0x00, DeviceRegistry.EEP_LENGTH, true, new ReadJob() {
+			void accept(int index, Packet ack) {
+				int firmware = ((ack.get(11) & 0xFF) << 8) | (ack.get(12) & 0xFF);
+				int min = ((ack.get(9 + 0x1B) & 0x03) << 8) | (ack.get(9 + 0x1A) & 0xFF);	// Min Position
+				int max = ((ack.get(9 + 0x1D) & 0x03) << 8) | (ack.get(9 + 0x1C) & 0xFF);	// Max Position
+				registry.put(servoIDs[index], ack.get(9) & 0xFF, firmware, min, max);
+			}
+		});
+		return registry;
+	}
+	
+	private int restoreEEP(EEPSnapshot snapshot, int[] sources, int[] targets) {
+		EEPSnapshot current = new EEPSnapshot();
+		readEEP(targets, current);
+		
+		WriteBatch batch = new WriteBatch(this);
+		for (int i = 0; i < targets.length; i++) {
+			byte[] want = snapshot.image(sources[i]);
+			byte[] have = current.image(targets[i]);
+			if (want == null || have == null) continue;
+			
+			int last = -1;
+			for (int a = EEP_FIRST_WRITABLE; a < EEPSnapshot.EEP_SIZE; a++) {
+				if (want[a] == have[a]) continue;
+				
+				// the registers in a short gap already hold these values,
+				// writing them again makes one packet out of two
+				if (last >= 0 && a - last - 1 <= batch.getGapThreshold()) {
+					for (int g = last + 1; g < a; g++) {
+						batch.writeEEP(targets[i], g, want[g]);
+					}
+				}
+				batch.writeEEP(targets[i], a, want[a]);
+				last = a;
+			}
+		}
+		
+		if (!batch.isEmpty()) {
+			batch.flush();
+			try {
+				Thread.sleep(EEP_WRITE_TIME);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
 		
-		byte[] packetBuf = buildPacket((byte)servoID, HEEPWRITE, optData);
-		sendData(packetBuf);
+		EEPSnapshot written = new EEPSnapshot();
+		readEEP(targets, written);
+		
+		int count = 0;
+		for (int i = 0; i < targets.length; i++) {
+			byte[] want = snapshot.image(sources[i]);
+			byte[] have = written.image(targets[i]);
+			if (want == null || have == null) continue;
+			
+			boolean same = true;
+			for (int a = EEP_FIRST_WRITABLE; a < EEPSnapshot.EEP_SIZE; a++) {
+				if (want[a] != have[a]) same = false;
+			}
+			if (same) count++;
+		}
+		
+		return count;
+	}
+	
+	// Replies of a pipelinedRead()
+	private static abstract class ReadJob {
+		/**
+		 * @param index position of the servo in servoIDs
+		 * @param ack its read ACK; data starts at 9
+		 */
+		abstract void accept(int index, Packet ack);
 	}
 	
-	private boolean isRightPacket(byte[] buf) {
-		if (buf.length < 7) return false;
+	// Read the same registers of many servos. Requests are sent back to back,
+	// spaced by the time one request and its reply take on the wire at the
+	// current baudrate, and replies are picked up by ID as they stream in.
+	// Servos that did not reply are asked again with wider spacing if replies
+	// collided, or always when retry is true. Returns the number of servos read.
+	private int pipelinedRead(byte cmd, int[] servoIDs, int address, int length, boolean retry, ReadJob job) {
+		MetricsRecorder metrics = mMetrics;
+		long slot = wireTime(READ_REQUEST_SIZE + READ_ACK_OVERHEAD + length) + READ_TURNAROUND;
+		int count = 0;
 		
-	    byte chksum1 = checksum1(buf);			// Checksum1
-	    byte chksum2 = checksum2(chksum1);		// Checksum2
-	    
-	    if (chksum1 != buf[5]) return false;
-		if (chksum2 != buf[6]) return false;
+		mBus.lock();
+		try {
+			// scratch arrays, only used while holding the bus
+			if (mReadDone.length < servoIDs.length) {
+				mReadDone = new boolean[servoIDs.length];
+				mReadSent = new long[servoIDs.length];
+			}
+			int[] index = mReadIndex;
+			boolean[] done = mReadDone;
+			Arrays.fill(index, -1);
+			Arrays.fill(done, 0, servoIDs.length, false);
+			for (int i = 0; i < servoIDs.length; i++) {
+				index[servoIDs[i] & 0xFF] = i;
+			}
+			
+			for (int pass = 0; pass < READ_MAX_PASS && count < servoIDs.length; pass++) {
+				long errors = mDecoder.getChecksumErrors();
+				count += readPass(cmd, servoIDs, address, length, slot, index, done, mReadSent, job);
+				
+				if (mDecoder.getChecksumErrors() != errors) {
+					slot *= 2;					// replies collided, slow down
+				} else if (!retry) {
+					break;
+				}
+			}
+			
+			if (metrics != null && retry) {
+				for (int i = 0; i < servoIDs.length; i++) {
+					if (!done[i]) metrics.timeout(cmd, servoIDs[i]);
+				}
+			}
+			
+			RegisterShadow shadow = mShadow;
+			if (shadow != null) {
+				for (int i = 0; i < servoIDs.length; i++) {
+					if (!done[i]) shadow.lost(servoIDs[i]);
+				}
+			}
+		} finally {
+			mBus.unlock();
+		}
 		
-		return true;
+		return count;
 	}
 	
-	// build packet
-	private byte[] buildPacket(byte pId, byte cmd, byte[] optData) {
-		int pktSize;
+	private int readPass(byte cmd, int[] servoIDs, int address, int length, long slot,
+			int[] index, boolean[] done, long[] sent, ReadJob job) {
+		PacketEncoder encoder = mBus.encoder();
+		int count = 0;
+		
+		discardInput();
 		
-		if (optData == null) {
-			pktSize = BASIC_PKT_SIZE;
-		} else {
-			pktSize = BASIC_PKT_SIZE + optData.length;
+		TimeoutProfile timeouts = mTimeouts;
+		long wire = wireTime(READ_REQUEST_SIZE + READ_ACK_OVERHEAD + length);
+		long wait = mAckTimeout * 1000000L;
+		if (timeouts != null) wait = 0;
+		
+		int last = -1;
+		long next = System.nanoTime();
+		for (int i = 0; i < servoIDs.length; i++) {
+			if (done[i]) continue;
+			if (timeouts != null) wait = Math.max(wait, timeouts.timeout(servoIDs[i], wire, mAckTimeout * 1000000L));
+			
+			count += collectReplies(cmd, address, length, next, index, done, sent, last, job);
+			
+			encoder.begin(servoIDs[i], cmd);
+			encoder.put(address);				// Address
+			encoder.put(length);				// Length
+			encoder.end();
+			mBus.send(encoder);
+			next = System.nanoTime();
+			sent[i] = next;
+			next += slot;
+			last = i;
 		}
-
-		byte[] packetBuf = new byte[pktSize];
 		
-		packetBuf[0] = (byte) 0xFF;					// Packet Header
-		packetBuf[1] = (byte) 0xFF;					// Packet Header	
-		packetBuf[2] = (byte) pktSize;	 			// Packet Size
-		packetBuf[3] = pId;							// Servo ID
-		packetBuf[4] = cmd;							// Command
+		count += collectReplies(cmd, address, length, next + wait, index, done, sent, last, job);
+		return count;
+	}
+	
+	// Pick up replies until the time until, or until the servo at last has replied:
+	// replies come one after the other, so the line is free and the ones before are in.
+	private int collectReplies(byte cmd, int address, int length, long until,
+			int[] index, boolean[] done, long[] sent, int last, ReadJob job) {
+		int count = 0;
 		
-		for (int i = 0; i < pktSize - BASIC_PKT_SIZE; i++) {
-			packetBuf[7+i] = optData[i];
+		while (true) {
+			pollInput();
+			
+			while (mDecoder.next(mAck)) {
+				if (mAck.getCommand() != (cmd | 0x40) || mAck.getDataLength() < length + 4
+						|| (mAck.getData(0) & 0xFF) != address) continue;
+				
+				int i = index[mAck.getID()];
+				if (i < 0 || done[i]) continue;
+				
+				RegisterShadow shadow = mShadow;
+				if (shadow != null) shadow.observe(mAck);
+				
+				MetricsRecorder metrics = mMetrics;
+				if (metrics != null) metrics.roundTrip(cmd, mAck.getID(), System.nanoTime() - sent[i]);
+				
+				job.accept(i, mAck);
+				done[i] = true;
+				count++;
+			}
+			
+			if (last >= 0 && done[last]) return count;
+			
+			long left = until - System.nanoTime();
+			if (left <= 0 || Thread.currentThread().isInterrupted()) return count;
+			
+			if (left > ACK_POLL_INTERVAL) {
+				LockSupport.parkNanos(this, ACK_POLL_INTERVAL);
+			} else {
+				Thread.yield();				// parking would overshoot the request slot
+			}
 		}
+	}
+	
+	// Send the RAM/EEP write packets in buf[0 ~ len) and match them with their ACKs
+	// (ACK policy 2). Up to window packets wait for their ACK at a time, at most one
+	// per servo since an ACK only tells its ID and command. Packets not acknowledged
+	// in time, or whose ACK reports a packet error, are sent again up to retries times.
+	// Broadcast packets are sent without waiting. status[ID] gets (status error << 8
+	// | status detail) of the ACK, or -1 if none came; a failure is kept over a later
+	// success. The shadow records what was acknowledged. Returns the number of packets that failed.
+	int verifyWrites(byte[] buf, int len, int window, int retries, int[] status) {
+		int count = 0;
+		for (int off = 0; off < len; off += buf[off + 2] & 0xFF) count++;
 		
-		packetBuf[5] = checksum1(packetBuf);		// Checksum 1
-		packetBuf[6] = checksum2(packetBuf[5]);		// Checksum 2
-
-		return packetBuf;
+		int[] offsets = new int[count];
+		for (int i = 0, off = 0; i < count; off += buf[off + 2] & 0xFF) offsets[i++] = off;
+		
+		int[] attempts = new int[count];
+		long[] sentAt = new long[count];
+		long[] deadline = new long[count];
+		boolean[] flying = new boolean[count];
+		boolean[] done = new boolean[count];
+		int[] waiting = new int[256];		// by ID, packet waiting for its ACK
+		Arrays.fill(waiting, -1);
+		int inFlight = 0;
+		int failed = 0;
+		
+		TimeoutProfile timeouts = mTimeouts;
+		MetricsRecorder metrics = mMetrics;
+		RegisterShadow shadow = mShadow;
+		
+		mBus.lock();
+		try {
+			discardInput();
+			
+			int first = 0;					// packets before it are done
+			int last = -1;					// packet sent last
+			long nextSlot = System.nanoTime();
+			while (true) {
+				pollInput();
+				while (mDecoder.next(mAck)) {
+					int id = mAck.getID();
+					int i = waiting[id];
+					if (i < 0 || mAck.getCommand() != ((buf[offsets[i] + 4] | 0x40) & 0xFF)) continue;
+					
+					waiting[id] = -1;
+					flying[i] = false;
+					inFlight--;
+					if (i == last) nextSlot = System.nanoTime();	// its ACK is through, the line is free
+					
+					int off = offsets[i];
+					long rtt = System.nanoTime() - sentAt[i];
+					if (metrics != null) metrics.roundTrip(buf[off + 4], id, rtt);
+					if (timeouts != null) timeouts.sample(id, rtt - wireTime((buf[off + 2] & 0xFF) + STAT_ACK_SIZE));
+					if (shadow != null) shadow.observe(mAck);
+					
+					byte error = mAck.getStatusError();
+					if ((error & H_ERROR_INVALID_PKT) != 0 && attempts[i] <= retries) continue;	// send again
+					
+					done[i] = true;
+					int value = (error & 0xFF) << 8 | (mAck.getStatusDetail() & 0xFF);
+					if (!isWriteFailure(status[id])) status[id] = value;
+					if ((error & H_ERROR_INVALID_PKT) != 0) {
+						failed++;
+					} else if (shadow != null && buf[off + 4] == HRAMWRITE) {
+						shadow.record(id, buf[off + 7] & 0xFF, buf, off + 9, buf[off + 8] & 0xFF, true);
+					}
+				}
+				
+				long now = System.nanoTime();
+				for (int i = first; i < count; i++) {
+					if (!flying[i] || now - deadline[i] < 0) continue;
+					
+					int id = buf[offsets[i] + 3] & 0xFF;
+					waiting[id] = -1;
+					flying[i] = false;
+					inFlight--;
+					if (metrics != null) metrics.timeout(buf[offsets[i] + 4], id);
+					if (timeouts != null) timeouts.miss(id);
+					if (attempts[i] <= retries) continue;							// send again
+					
+					done[i] = true;
+					status[id] = -1;
+					failed++;
+					if (shadow != null) shadow.forget(id);
+				}
+				
+				while (first < count && done[first]) first++;
+				if (first == count) break;
+				
+				int next = -1;
+				if (inFlight < window && now - nextSlot >= 0) {
+					for (int i = first; i < count; i++) {
+						if (!done[i] && !flying[i] && waiting[buf[offsets[i] + 3] & 0xFF] < 0) {
+							next = i;
+							break;
+						}
+					}
+				}
+				
+				if (next < 0) {
+					LockSupport.parkNanos(this, ACK_POLL_INTERVAL);
+					continue;
+				}
+				
+				int off = offsets[next];
+				int size = buf[off + 2] & 0xFF;
+				int id = buf[off + 3] & 0xFF;
+				mBus.send(buf, off, size);
+				now = System.nanoTime();
+				attempts[next]++;
+				last = next;
+				
+				if (id == 0xFE) {							// nobody replies to a broadcast
+					done[next] = true;
+					if (shadow != null && buf[off + 4] == HRAMWRITE) {
+						shadow.record(id, buf[off + 7] & 0xFF, buf, off + 9, buf[off + 8] & 0xFF, false);
+					}
+					nextSlot = now + wireTime(size);
+					continue;
+				}
+				
+				long wire = wireTime(size + STAT_ACK_SIZE);
+				long timeout = mAckTimeout * 1000000L;
+				if (timeouts != null) timeout = timeouts.timeout(id, wire, timeout);
+				
+				flying[next] = true;
+				waiting[id] = next;
+				inFlight++;
+				sentAt[next] = now;
+				deadline[next] = now + timeout;
+				nextSlot = now + wire + READ_TURNAROUND;	// the ACK has the line until then
+			}
+		} finally {
+			mBus.unlock();
+		}
+		
+		return failed;
 	}
-
-	// checksum1
-	private byte checksum1(byte[] buf) {
-	  byte chksum1 = 0x00;	
-	  
-	  for (int i = 0; i < buf.length; i++) {
-		  if (i == 0 || i == 1 || i == 5 || i == 6) continue;
-		  chksum1 ^= buf[i];
-	  }
-	  
-	  return (byte) (chksum1 & 0xFE);
+	
+	// status of verifyWrites()
+	static boolean isWriteFailure(int status) {
+		return status == -1 || (status >= 0 && ((status >> 8) & H_ERROR_INVALID_PKT) != 0);
 	}
 	
-	// checksum2
-	private byte checksum2(byte chksum1) {
-	  return (byte) ((~chksum1) & 0xFE);
+	// Send the read command in encoder and wait for its ACK packet, holding the bus.
+	// The request is sent again after a failure, within the read retries and budget.
+	// Returns the calling thread's copy of the ACK packet.
+	private Packet transact(PacketEncoder encoder) throws ReadException {
+		byte[] request = encoder.getBuffer();
+		int off = encoder.packetOffset();
+		int len = encoder.length();
+		byte pId = request[off + 3];
+		byte cmd = request[off + 4];
+		
+		int address = -1;					// a read reply must echo address and length
+		int length = -1;
+		int ackSize = STAT_ACK_SIZE;
+		if (cmd == HEEPREAD || cmd == HRAMREAD) {
+			address = request[off + 7] & 0xFF;
+			length = request[off + 8] & 0xFF;
+			ackSize = READ_ACK_OVERHEAD + length;
+		}
+		long wire = wireTime((request[off + 2] & 0xFF) + ackSize);
+		
+		TimeoutProfile timeouts = mTimeouts;
+		MetricsRecorder metrics = mMetrics;
+		int reason = ReadException.TIMEOUT;
+		int attempts = 0;
+		
+		mBus.lock();
+		try {
+			discardInput();				// stale bytes must not be taken for this reply
+			
+			long start = System.nanoTime();
+			long end = 0;
+			while (true) {
+				long timeout = mAckTimeout * 1000000L;
+				if (timeouts != null) timeout = timeouts.timeout(pId & 0xFF, wire, timeout);
+				if (attempts == 0) end = start + Math.max(mReadBudget * 1000000L, timeout);
+				
+				mBus.send(request, 0, len);
+				long sent = System.nanoTime();
+				attempts++;
+				
+				reason = readAck(pId, cmd, address, length, Math.min(timeout, end - sent));
+				if (reason == 0) {
+					long rtt = System.nanoTime() - sent;
+					if (metrics != null) metrics.roundTrip(cmd, pId & 0xFF, rtt);
+					if (timeouts != null) timeouts.sample(pId & 0xFF, rtt - wire);
+					
+					RegisterShadow shadow = mShadow;
+					if (shadow != null) shadow.observe(mAck);
+					
+					Packet ack = mAcks.get();
+					ack.copyFrom(mAck);
+					return ack;
+				}
+				
+				if (Thread.currentThread().isInterrupted()) break;		// e.g. BusWorker.stop()
+				
+				RegisterShadow shadow = mShadow;
+				if (shadow != null) shadow.lost(pId & 0xFF);
+				
+				if (reason == ReadException.TIMEOUT) {
+					// a broken or wrong reply is no sign of a slow servo
+					if (metrics != null) metrics.timeout(cmd, pId & 0xFF);
+					if (timeouts != null) timeouts.miss(pId & 0xFF);
+					discardInput();
+				} else {
+					drainInput(wireTime(ackSize) + READ_TURNAROUND, end);
+				}
+				
+				if (attempts > mReadRetries || end - System.nanoTime() < wire) break;
+			}
+		} finally {
+			encoder.reset();
+			mBus.unlock();
+		}
+		
+		throw new ReadException(reason, pId & 0xFF, attempts);
 	}
 	
-	// Sending the buffer long legnth to Serial port
-	private void sendData(byte[] buffer) {
-		mPort.write(buffer);
+	// true if the shadow says the servo holds these register values already
+	private boolean isKnown(int servoID, int address, int length, int value) {
+		RegisterShadow shadow = mShadow;
+		return shadow != null && shadow.write(servoID, address, length, value);
 	}
 	
-	private byte[] readData() {
-		int size = 0;
-		byte readBuf[] = new byte[255];
+	private void discardInput() {
+		if (mCapture != null) pollInput();		// log the stale bytes before dropping them
 		
-	    while (mPort.available() > 0) {
-	    	int inBuffer = mPort.read();
-	    	readBuf[size++] = (byte) (inBuffer & 0xFF);
-//	    	System.out.println(inBuffer & 0xFF);
-	    }
-	    
-	    byte retBuf[] = new byte[size];
-	    System.arraycopy(readBuf, 0, retBuf, 0, retBuf.length);
-	    return retBuf;
+		int size = mTransport.available();
+		if (size > 0) {
+			mTransport.clear();
+			
+			MetricsRecorder metrics = mMetrics;
+			if (metrics != null) metrics.received(size);
+		}
+		mDecoder.reset();
+	}
+	
+	// Let the rest of a broken reply come in and drop it with everything else,
+	// once nothing has arrived for quiet ns or at until.
+	private void drainInput(long quiet, long until) {
+		long last = System.nanoTime();
+		while (true) {
+			long now = System.nanoTime();
+			if (mTransport.available() > 0) {
+				pollInput();
+				last = now;
+			} else if (now - last >= quiet || now - until >= 0 || Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			LockSupport.parkNanos(this, ACK_POLL_INTERVAL);
+		}
+		discardInput();
+	}
+	
+	// Move received bytes into the decoder
+	private void pollInput() {
+		while (mTransport.available() > 0) {
+			int size = mTransport.read(mReadBuf);
+			mDecoder.feed(mReadBuf, 0, size);
+			
+			MetricsRecorder metrics = mMetrics;
+			if (metrics != null) metrics.received(size);
+			
+			WireCapture capture = mCapture;
+			if (capture != null) capture.frame(WireCapture.RX, mReadBuf, 0, size);
+		}
+	}
+	
+	// Wait for the ACK packet of (pId, cmd) until a valid one arrives or timeout ns.
+	// For a read (address >= 0), the reply must also be of address and length.
+	// Returns 0 on success, or the ReadException reason. A broken packet ends the wait.
+	private int readAck(byte pId, byte cmd, int address, int length, long timeout) {
+		long deadline = System.nanoTime() + timeout;
+		long errors = mDecoder.getChecksumErrors();
+		int reason = ReadException.TIMEOUT;
+		
+		mAckWaiter = Thread.currentThread();
+		try {
+			while (true) {
+				pollInput();
+				
+				while (mDecoder.next(mAck)) {
+					if (mAck.getID() != (pId & 0xFF)) {
+						if (mAck.getCommand() == (cmd | 0x40) && reason == ReadException.TIMEOUT) {
+							reason = ReadException.WRONG_ID;
+						}
+						continue;
+					}
+					if (mAck.getCommand() != (cmd | 0x40) || (address >= 0
+							&& (mAck.getDataLength() < length + 4 || (mAck.getData(0) & 0xFF) != address
+							|| (mAck.getData(1) & 0xFF) != length))) {
+						reason = ReadException.WRONG_COMMAND;
+						continue;
+					}
+					return 0;
+				}
+				
+				if (mDecoder.getChecksumErrors() != errors) return ReadException.CHECKSUM;
+				if (System.nanoTime() - deadline >= 0) return reason;
+				if (Thread.currentThread().isInterrupted()) return reason;	// parking would not wait
+				
+				LockSupport.parkNanos(this, ACK_POLL_INTERVAL);
+			}
+		} finally {
+			mAckWaiter = null;
+		}
 	}
 }
@@ -0,0 +1,473 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Several serial lines driven as one robot.
+ * 
+ * Each port is a HerkuleX of its own and each servo ID belongs to one port.
+ * Commands to a servo go to its port. actionAll() and the multi-servo reads
+ * run on every port at the same time, each on the bus thread of its port,
+ * so N lines move N times as many servos in the same time.
+ * 
+ * ex)  HerkuleXGroup group = new HerkuleXGroup(new HerkuleX(port1), new HerkuleX(port2));
+ * 		group.performFastIDScan();		// or group.assign(id, port)
+ * 		group.addMove(0, 512, HerkuleX.LED_RED);	// on port1
+ * 		group.addMove(20, 512, HerkuleX.LED_RED);	// on port2
+ * 		group.actionAll(1000);			// both ports at once
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Multi_Port
+ *
+ */
+public class HerkuleXGroup {
+
+	private static final int FRAME_BUFFER_SIZE = 2048;
+
+	private final HerkuleX[] mPorts;
+	private final byte[] mPortOfID = new byte[256];		// -1: not assigned
+	private final PacketEncoder[] mEncoders;
+	private final Object mActionLock = new Object();
+
+	/**
+	 * @param ports one HerkuleX per serial line
+	 */
+	public HerkuleXGroup(HerkuleX... ports) {
+		if (ports.length == 0 || ports.length > 127) {
+			throw new IllegalArgumentException("1 ~ 127 ports");
+		}
+		
+		mPorts = ports.clone();
+		mEncoders = new PacketEncoder[ports.length];
+		for (int i = 0; i < ports.length; i++) {
+			mEncoders[i] = new PacketEncoder(new byte[FRAME_BUFFER_SIZE]);
+		}
+		Arrays.fill(mPortOfID, (byte) -1);
+	}
+
+	/**
+	 * @return number of ports
+	 */
+	public int getPortCount() {
+		return mPorts.length;
+	}
+
+	/**
+	 * @param port 0 ~ getPortCount()-1
+	 * @return the HerkuleX of the port
+	 */
+	public HerkuleX getPort(int port) {
+		return mPorts[port];
+	}
+
+	/**
+	 * Tell which port a servo is on.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param port 0 ~ getPortCount()-1, -1 to remove the servo
+	 */
+	public void assign(int servoID, int port) {
+		if (port < -1 || port >= mPorts.length) return;
+		mPortOfID[servoID & 0xFF] = (byte) port;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return port of the servo, -1 if not assigned
+	 */
+	public int getPortOf(int servoID) {
+		return mPortOfID[servoID & 0xFF];
+	}
+
+	/**
+	 * Initialize all ports.
+	 */
+	public void initialize() {
+		for (HerkuleX port : mPorts) {
+			port.initialize();
+		}
+	}
+
+	/**
+	 * Scan all ports at the same time and assign the servos found.
+	 * 
+	 * @return ArrayList<ServoInfo> - Servo IDs and models in port order
+	 * @throws IllegalStateException an ID was found on two ports. The scan is
+	 * complete and the first port keeps the ID; see getPortOf().
+	 */
+	public ArrayList<ServoInfo> performFastIDScan() {
+		ArrayList<CompletableFuture<ArrayList<ServoInfo>>> scans = new ArrayList<CompletableFuture<ArrayList<ServoInfo>>>();
+		for (int i = 0; i < mPorts.length; i++) {
+			final HerkuleX port = mPorts[i];
+			scans.add(port.worker().read(new Callable<ArrayList<ServoInfo>>() {
+				public ArrayList<ServoInfo> call() {
+					return port.performFastIDScan();
+				}
+			}));
+		}
+		
+		Arrays.fill(mPortOfID, (byte) -1);
+		ArrayList<ServoInfo> servos = new ArrayList<ServoInfo>();
+		String duplicates = null;
+		for (int i = 0; i < mPorts.length; i++) {
+			ArrayList<ServoInfo> found = join(scans.get(i));
+			if (found == null) continue;
+			
+			for (ServoInfo servo : found) {
+				if (mPortOfID[servo.getID()] >= 0) {
+					duplicates = (duplicates == null ? "" : duplicates + ", ") + "servo " + servo.getID()
+							+ " on port " + mPortOfID[servo.getID()] + " and port " + i;
+					continue;
+				}
+				mPortOfID[servo.getID()] = (byte) i;
+				servos.add(servo);
+			}
+		}
+		
+		if (duplicates != null) throw new IllegalStateException("Duplicated IDs: " + duplicates);
+		return servos;
+	}
+
+	/**
+	 * @see HerkuleX#addMove(int, int, int)
+	 */
+	public void addMove(int servoID, int goal, int led) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.addMove(servoID, goal, led);
+	}
+
+	/**
+	 * @see HerkuleX#addAngle(int, float, int)
+	 */
+	public void addAngle(int servoID, float angle, int led) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.addAngle(servoID, angle, led);
+	}
+
+	/**
+	 * @see HerkuleX#addSpeed(int, int, int)
+	 */
+	public void addSpeed(int servoID, int goalSpeed, int led) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.addSpeed(servoID, goalSpeed, led);
+	}
+
+	/**
+	 * @see HerkuleX#addMove(int, int, int, int)
+	 */
+	public void addMove(int servoID, int goal, int led, int playTime) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.addMove(servoID, goal, led, playTime);
+	}
+
+	/**
+	 * @see HerkuleX#addAngle(int, float, int, int)
+	 */
+	public void addAngle(int servoID, float angle, int led, int playTime) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.addAngle(servoID, angle, led, playTime);
+	}
+
+	/**
+	 * @see HerkuleX#addSpeed(int, int, int, int)
+	 */
+	public void addSpeed(int servoID, int goalSpeed, int led, int playTime) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.addSpeed(servoID, goalSpeed, led, playTime);
+	}
+
+	/**
+	 * Move all servos added with the 3 parameter add methods, on all ports at once.
+	 * 
+	 * The S_JOG packets of every port are built first, then all bus threads
+	 * are released together so the ports start sending within a few microseconds.
+	 * A port whose bus thread is busy with an asynchronous read sends when it is done.
+	 * 
+	 * @param playTime 0 ~ 2856 ms
+	 */
+	public void actionAll(int playTime) {
+		if ((playTime <0) || (playTime > 2856)) return;
+		
+		synchronized (mActionLock) {
+			for (int i = 0; i < mPorts.length; i++) {
+				mEncoders[i].reset();
+				mPorts[i].encodeActionAll(mEncoders[i], playTime);
+			}
+			sendAll();
+		}
+	}
+
+	/**
+	 * Move all servos added with the 4 parameter add methods, on all ports at once.
+	 * 
+	 * @see #actionAll(int)
+	 */
+	public void actionAllIndividual() {
+		synchronized (mActionLock) {
+			for (int i = 0; i < mPorts.length; i++) {
+				mEncoders[i].reset();
+				mPorts[i].encodeActionAllIndividual(mEncoders[i]);
+			}
+			sendAll();
+		}
+	}
+
+	/**
+	 * @see HerkuleX#moveOne(int, int, int, int)
+	 */
+	public void moveOne(int servoID, int goalPos, int playTime, int led) {
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.moveOne(servoID, goalPos, playTime, led);
+	}
+
+	/**
+	 * @see HerkuleX#setLed(int, int)
+	 */
+	public void setLed(int servoID, int led) {
+		if ((byte) servoID == HerkuleX.BROADCAST_ID) {
+			for (HerkuleX port : mPorts) port.setLed(servoID, led);
+			return;
+		}
+		
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.setLed(servoID, led);
+	}
+
+	/**
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID (all ports)
+	 */
+	public void torqueON(int servoID) {
+		if ((byte) servoID == HerkuleX.BROADCAST_ID) {
+			for (HerkuleX port : mPorts) port.torqueON(servoID);
+			return;
+		}
+		
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.torqueON(servoID);
+	}
+
+	/**
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID (all ports)
+	 */
+	public void torqueOFF(int servoID) {
+		if ((byte) servoID == HerkuleX.BROADCAST_ID) {
+			for (HerkuleX port : mPorts) port.torqueOFF(servoID);
+			return;
+		}
+		
+		HerkuleX port = portOf(servoID);
+		if (port != null) port.torqueOFF(servoID);
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return current position 0 ~ 1023, -1: failure or not assigned
+	 */
+	public int getPosition(int servoID) {
+		HerkuleX port = portOf(servoID);
+		if (port == null) return -1;
+		return port.getPosition(servoID);
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param state filled with the servo state on success
+	 * @return true - success, false - failure or not assigned
+	 */
+	public boolean readState(int servoID, ServoState state) {
+		HerkuleX port = portOf(servoID);
+		if (port == null) return false;
+		return port.readState(servoID, state);
+	}
+
+	/**
+	 * Read the position of many servos, all ports at the same time,
+	 * each port in one sweep (see HerkuleX.readPositions()).
+	 * 
+	 * @param servoIDs servos to read
+	 * @param positions filled with 0 ~ 1023, -1 on failure
+	 * @param valid set to true where the read succeeded
+	 * @return number of servos read
+	 */
+	public int readPositions(final int[] servoIDs, final int[] positions, final boolean[] valid) {
+		Arrays.fill(positions, 0, servoIDs.length, -1);	// as they stay if a port fails
+		Arrays.fill(valid, 0, servoIDs.length, false);
+		
+		ArrayList<CompletableFuture<Integer>> reads = new ArrayList<CompletableFuture<Integer>>();
+		for (int i = 0; i < mPorts.length; i++) {
+			final int p = i;
+			final HerkuleX port = mPorts[i];
+			final int[] slots = slotsOn(servoIDs, p);
+			if (slots.length == 0) continue;
+			
+			reads.add(port.worker().read(new Callable<Integer>() {
+				public Integer call() {
+					int[] ids = new int[slots.length];
+					for (int k = 0; k < slots.length; k++) {
+						ids[k] = servoIDs[slots[k]];
+					}
+					int[] read = new int[slots.length];
+					boolean[] ok = new boolean[slots.length];
+					int count = port.readPositions(ids, read, ok);
+					for (int k = 0; k < slots.length; k++) {
+						positions[slots[k]] = read[k];
+						valid[slots[k]] = ok[k];
+					}
+					return count;
+				}
+			}));
+		}
+		
+		return sum(reads);
+	}
+
+	/**
+	 * Read the state of many servos, all ports at the same time,
+	 * each port in one sweep (see HerkuleX.readStates()).
+	 * 
+	 * @param servoIDs servos to read
+	 * @param states one ServoState per servo, filled on success
+	 * @param valid set to true where the read succeeded
+	 * @return number of servos read
+	 */
+	public int readStates(final int[] servoIDs, final ServoState[] states, final boolean[] valid) {
+		Arrays.fill(valid, 0, servoIDs.length, false);		// as it stays if a port fails
+		
+		ArrayList<CompletableFuture<Integer>> reads = new ArrayList<CompletableFuture<Integer>>();
+		for (int i = 0; i < mPorts.length; i++) {
+			final int p = i;
+			final HerkuleX port = mPorts[i];
+			final int[] slots = slotsOn(servoIDs, p);
+			if (slots.length == 0) continue;
+			
+			reads.add(port.worker().read(new Callable<Integer>() {
+				public Integer call() {
+					int[] ids = new int[slots.length];
+					ServoState[] read = new ServoState[slots.length];
+					for (int k = 0; k < slots.length; k++) {
+						ids[k] = servoIDs[slots[k]];
+						read[k] = states[slots[k]];
+					}
+					boolean[] ok = new boolean[slots.length];
+					int count = port.readStates(ids, read, ok);
+					for (int k = 0; k < slots.length; k++) {
+						valid[slots[k]] = ok[k];
+					}
+					return count;
+				}
+			}));
+		}
+		
+		return sum(reads);
+	}
+
+	/**
+	 * Stop the bus threads of all ports.
+	 */
+	public void stop() {
+		for (HerkuleX port : mPorts) {
+			port.stopAsync();
+		}
+	}
+
+	private HerkuleX portOf(int servoID) {
+		int port = mPortOfID[servoID & 0xFF];
+		return port < 0 ? null : mPorts[port];
+	}
+
+	// Positions in servoIDs of the servos on a port
+	private int[] slotsOn(int[] servoIDs, int port) {
+		int count = 0;
+		for (int j = 0; j < servoIDs.length; j++) {
+			if (mPortOfID[servoIDs[j] & 0xFF] == port) count++;
+		}
+		
+		int[] slots = new int[count];
+		int n = 0;
+		for (int j = 0; j < servoIDs.length; j++) {
+			if (mPortOfID[servoIDs[j] & 0xFF] == port) slots[n++] = j;
+		}
+		return slots;
+	}
+
+	// Hand each port's packets to its bus thread and wait until all are sent,
+	// so the encoders can be reused. The bus threads wait at the gate until
+	// every port has its packets queued, then all start sending together
+	// instead of the first port being a queueing round ahead of the last.
+	private void sendAll() {
+		final CountDownLatch gate = new CountDownLatch(1);
+		
+		ArrayList<CompletableFuture<Void>> sends = new ArrayList<CompletableFuture<Void>>();
+		for (int i = 0; i < mPorts.length; i++) {
+			if (mEncoders[i].length() == 0) continue;
+			
+			final HerkuleX port = mPorts[i];
+			final PacketEncoder encoder = mEncoders[i];
+			sends.add(port.worker().send(new Runnable() {
+				public void run() {
+					try {
+						gate.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new CancellationException("HerkuleX bus thread stopped");
+					}
+					port.write(encoder);
+				}
+			}));
+		}
+		
+		gate.countDown();
+		for (CompletableFuture<Void> send : sends) {
+			join(send);
+		}
+	}
+
+	private static int sum(ArrayList<CompletableFuture<Integer>> futures) {
+		int total = 0;
+		for (CompletableFuture<Integer> future : futures) {
+			Integer n = join(future);
+			if (n != null) total += n;
+		}
+		return total;
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			e.printStackTrace();
+		} catch (CancellationException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Bus counters as seen from JConsole or any other JMX client.
+ * Registered by HerkuleX.registerMBean(). Times are in microseconds.
+ * 
+ * @author DongbuRobot
+ *
+ */
+public interface HerkuleXMetricsMXBean {
+
+	long getTxBytes();
+
+	long getRxBytes();
+
+	long getTimeouts();
+
+	long getChecksumErrors();
+
+	long getDroppedBytes();
+
+	float getBusUtilization();
+
+	long getRoundTrips();
+
+	float getLatencyMean();
+
+	float getLatencyP50();
+
+	float getLatencyP99();
+
+	float getLatencyMax();
+
+	void reset();
+}
@@ -0,0 +1,407 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.Arrays;
+
+/**
+ * A serial chain of HerkuleX joints, e.g. an arm, with forward and inverse kinematics.
+ * 
+ * Each joint turns about its own axis and is described by its Denavit-Hartenberg
+ * parameters: link length a, link twist alpha, link offset d; the joint angle is theta.
+ * A joint angle is turned into a servo angle by servo = offset + direction * theta,
+ * then into a position with the 0.325 degrees per unit of addAngle().
+ * 
+ * solve() moves the tip of the chain to a point with damped least squares,
+ * starting from the last solution, so following a moving target takes a few
+ * iterations per tick. Nothing is allocated after the joints are added.
+ * 
+ * ex)  JointChain arm = new JointChain(myHerkuleX);
+ * 		arm.addJoint(1, 0, 90, 50);			// shoulder pan
+ * 		arm.addJoint(2, 100, 0, 0);			// shoulder
+ * 		arm.addJoint(3, 80, 0, 0);			// elbow
+ * 		arm.setLimits(2, -90, 90);
+ * 		if (arm.solve(120, 30, 60)) {
+ * 		  arm.addAngles(HerkuleX.LED_GREEN);
+ * 		  myHerkuleX.actionAll(20);
+ * 		}
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Kinematics
+ *
+ */
+public class JointChain {
+
+	private static final float SERVO_RANGE = 166.7f;		// degrees either way of the center
+	private static final double MAX_STEP = Math.toRadians(10);	// largest joint change per iteration
+
+	private final HerkuleX mHerkuleX;
+	private int mCount;
+
+	// per joint, angles in radians
+	private int[] mServoID = new int[0];
+	private double[] mA = new double[0];
+	private double[] mSinAlpha = new double[0];
+	private double[] mCosAlpha = new double[0];
+	private double[] mD = new double[0];
+	private float[] mOffset = new float[0];		// degrees
+	private float[] mDirection = new float[0];
+	private float[] mLower = new float[0];		// degrees, as set
+	private float[] mUpper = new float[0];
+	private double[] mMin = new double[0];		// within the servo range too
+	private double[] mMax = new double[0];
+	private double[] mTheta = new double[0];	// last solution
+
+	// solver work space
+	private double[] mOrigin = new double[3];	// origin of each joint frame, then the tip
+	private double[] mAxis = new double[3];		// joint axis (z) of each frame
+	private double[] mJacobian = new double[0];	// 3 x count, row major
+	private double[] mStep = new double[0];
+	private final double[] mFrame = new double[12];		// 3 x 4 running transform
+	private final double[] mError = new double[3];
+	private final double[] mMatrix = new double[9];		// J J^T + damping
+	private final double[] mY = new double[3];
+
+	private int mMaxIterations = 32;
+	private double mTolerance = 0.5;
+	private double mDamping = 5;
+	private int mIterations;
+	private double mResidual;
+
+	/**
+	 * @param herkulex servos of the chain
+	 */
+	public JointChain(HerkuleX herkulex) {
+		mHerkuleX = herkulex;
+	}
+
+	/**
+	 * Add the next joint, from the base towards the tip.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param a link length, along the x axis of this joint
+	 * @param alpha link twist in degrees, about the x axis of this joint
+	 * @param d link offset, along the axis of this joint
+	 * @return index of the joint, 0 for the first one
+	 */
+	public int addJoint(int servoID, float a, float alpha, float d) {
+		int n = mCount + 1;
+		mServoID = Arrays.copyOf(mServoID, n);
+		mA = Arrays.copyOf(mA, n);
+		mSinAlpha = Arrays.copyOf(mSinAlpha, n);
+		mCosAlpha = Arrays.copyOf(mCosAlpha, n);
+		mD = Arrays.copyOf(mD, n);
+		mOffset = Arrays.copyOf(mOffset, n);
+		mDirection = Arrays.copyOf(mDirection, n);
+		mLower = Arrays.copyOf(mLower, n);
+		mUpper = Arrays.copyOf(mUpper, n);
+		mMin = Arrays.copyOf(mMin, n);
+		mMax = Arrays.copyOf(mMax, n);
+		mTheta = Arrays.copyOf(mTheta, n);
+		mOrigin = new double[3 * (n + 1)];
+		mAxis = new double[3 * n];
+		mJacobian = new double[3 * n];
+		mStep = new double[n];
+		
+		mServoID[mCount] = servoID;
+		mA[mCount] = a;
+		mSinAlpha[mCount] = Math.sin(Math.toRadians(alpha));
+		mCosAlpha[mCount] = Math.cos(Math.toRadians(alpha));
+		mD[mCount] = d;
+		mDirection[mCount] = 1;
+		mCount = n;
+		setLimits(n - 1, -SERVO_RANGE, SERVO_RANGE);
+		
+		return n - 1;
+	}
+
+	/**
+	 * @return number of joints
+	 */
+	public int getJointCount() {
+		return mCount;
+	}
+
+	/**
+	 * Servo angle when the joint angle is 0.
+	 * 
+	 * @param joint index from addJoint()
+	 * @param offset degrees (default: 0)
+	 */
+	public void setOffset(int joint, float offset) {
+		mOffset[joint] = offset;
+		setLimits(joint, mLower[joint], mUpper[joint]);
+	}
+
+	/**
+	 * @param joint index from addJoint()
+	 * @param reversed true if the servo turns the other way from the joint angle
+	 */
+	public void setReversed(int joint, boolean reversed) {
+		mDirection[joint] = reversed ? -1 : 1;
+		setLimits(joint, mLower[joint], mUpper[joint]);
+	}
+
+	/**
+	 * Range of the joint angle. It is narrowed to what the servo can reach.
+	 * 
+	 * @param joint index from addJoint()
+	 * @param min degrees
+	 * @param max degrees
+	 */
+	public void setLimits(int joint, float min, float max) {
+		mLower[joint] = min;
+		mUpper[joint] = max;
+		
+		// joint angles the servo reaches
+		float a = (-SERVO_RANGE - mOffset[joint]) * mDirection[joint];
+		float b = (SERVO_RANGE - mOffset[joint]) * mDirection[joint];
+		mMin[joint] = Math.toRadians(Math.max(min, Math.min(a, b)));
+		mMax[joint] = Math.toRadians(Math.min(max, Math.max(a, b)));
+		mTheta[joint] = clamp(joint, mTheta[joint]);
+	}
+
+	/**
+	 * @param joint index from addJoint()
+	 * @return joint angle in degrees
+	 */
+	public float getJointAngle(int joint) {
+		return (float) Math.toDegrees(mTheta[joint]);
+	}
+
+	/**
+	 * Set a joint angle, e.g. to start solve() from the angles read from the servos.
+	 * 
+	 * @param joint index from addJoint()
+	 * @param angle degrees
+	 */
+	public void setJointAngle(int joint, float angle) {
+		mTheta[joint] = clamp(joint, Math.toRadians(angle));
+	}
+
+	/**
+	 * @param joint index from addJoint()
+	 * @return servo angle -166.7 ~ 166.7 degrees for the joint angle
+	 */
+	public float getServoAngle(int joint) {
+		return mOffset[joint] + mDirection[joint] * (float) Math.toDegrees(mTheta[joint]);
+	}
+
+	/**
+	 * @param iterations most iterations of one solve() (default: 32)
+	 */
+	public void setMaxIterations(int iterations) {
+		if (iterations < 1) return;
+		mMaxIterations = iterations;
+	}
+
+	/**
+	 * @param tolerance distance from the target that counts as reached,
+	 * in the unit of the link lengths (default: 0.5)
+	 */
+	public void setTolerance(float tolerance) {
+		if (tolerance <= 0) return;
+		mTolerance = tolerance;
+	}
+
+	/**
+	 * Damping keeps the joints calm near singular poses and out-of-reach
+	 * targets, at the cost of more iterations.
+	 * 
+	 * @param damping in the unit of the link lengths (default: 5)
+	 */
+	public void setDamping(float damping) {
+		if (damping < 0) return;
+		mDamping = damping;
+	}
+
+	/**
+	 * @return number of iterations of the last solve()
+	 */
+	public int getIterations() {
+		return mIterations;
+	}
+
+	/**
+	 * @return distance of the tip from the target after the last solve()
+	 */
+	public float getResidual() {
+		return (float) mResidual;
+	}
+
+	/**
+	 * Position of the tip for the current joint angles.
+	 * 
+	 * @param tip filled with x, y, z
+	 */
+	public void forward(float[] tip) {
+		forward();
+		int t = 3 * mCount;
+		tip[0] = (float) mOrigin[t];
+		tip[1] = (float) mOrigin[t + 1];
+		tip[2] = (float) mOrigin[t + 2];
+	}
+
+	/**
+	 * Find joint angles that put the tip at (x, y, z), starting from the last solution.
+	 * The joint angles are kept within their limits. When the point cannot be
+	 * reached, the tip ends as close to it as the iterations allow.
+	 * 
+	 * @param x target in the base frame
+	 * @param y target in the base frame
+	 * @param z target in the base frame
+	 * @return true if the tip is within the tolerance of the target
+	 */
+	public boolean solve(float x, float y, float z) {
+		int n = mCount;
+		int t = 3 * n;
+		double lambda2 = mDamping * mDamping;
+		
+		mIterations = 0;
+		while (true) {
+			forward();
+			mError[0] = x - mOrigin[t];
+			mError[1] = y - mOrigin[t + 1];
+			mError[2] = z - mOrigin[t + 2];
+			mResidual = Math.sqrt(mError[0] * mError[0] + mError[1] * mError[1] + mError[2] * mError[2]);
+			if (mResidual <= mTolerance) return true;
+			if (mIterations == mMaxIterations) return false;
+			mIterations++;
+			
+			// column i: axis_i x (tip - origin_i)
+			for (int i = 0; i < n; i++) {
+				double rx = mOrigin[t] - mOrigin[3 * i];
+				double ry = mOrigin[t + 1] - mOrigin[3 * i + 1];
+				double rz = mOrigin[t + 2] - mOrigin[3 * i + 2];
+				double zx = mAxis[3 * i];
+				double zy = mAxis[3 * i + 1];
+				double zz = mAxis[3 * i + 2];
+				mJacobian[i] = zy * rz - zz * ry;
+				mJacobian[n + i] = zz * rx - zx * rz;
+				mJacobian[2 * n + i] = zx * ry - zy * rx;
+			}
+			
+			// step = J^T (J J^T + lambda^2 I)^-1 error
+			for (int r = 0; r < 3; r++) {
+				for (int c = r; c < 3; c++) {
+					double sum = 0;
+					for (int i = 0; i < n; i++) {
+						sum += mJacobian[r * n + i] * mJacobian[c * n + i];
+					}
+					mMatrix[r * 3 + c] = sum;
+					mMatrix[c * 3 + r] = sum;
+				}
+				mMatrix[r * 4] += lambda2;
+			}
+			if (!solve3(mMatrix, mError, mY)) return false;
+			
+			double scale = 1;
+			for (int i = 0; i < n; i++) {
+				mStep[i] = mJacobian[i] * mY[0] + mJacobian[n + i] * mY[1] + mJacobian[2 * n + i] * mY[2];
+				if (Math.abs(mStep[i]) * scale > MAX_STEP) scale = MAX_STEP / Math.abs(mStep[i]);
+			}
+			for (int i = 0; i < n; i++) {
+				mTheta[i] = clamp(i, mTheta[i] + mStep[i] * scale);
+			}
+		}
+	}
+
+	/**
+	 * Queue the servo angles of the current joint angles for actionAll().
+	 * 
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public void addAngles(int led) {
+		for (int i = 0; i < mCount; i++) {
+			mHerkuleX.addAngle(mServoID[i], getServoAngle(i), led);
+		}
+	}
+
+	/**
+	 * Queue the servo angles of the current joint angles for actionAllIndividual().
+	 * 
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 * @param playTime 0 ~ 2856ms
+	 */
+	public void addAngles(int led, int playTime) {
+		for (int i = 0; i < mCount; i++) {
+			mHerkuleX.addAngle(mServoID[i], getServoAngle(i), led, playTime);
+		}
+	}
+
+	// Origins and axes of all joint frames and the tip for the current joint angles.
+	private void forward() {
+		double[] f = mFrame;
+		Arrays.fill(f, 0);
+		f[0] = f[5] = f[10] = 1;				// identity, rows of [R | p]
+		
+		for (int i = 0; i < mCount; i++) {
+			mOrigin[3 * i] = f[3];
+			mOrigin[3 * i + 1] = f[7];
+			mOrigin[3 * i + 2] = f[11];
+			mAxis[3 * i] = f[2];
+			mAxis[3 * i + 1] = f[6];
+			mAxis[3 * i + 2] = f[10];
+			
+			double ct = Math.cos(mTheta[i]);
+			double st = Math.sin(mTheta[i]);
+			double ca = mCosAlpha[i];
+			double sa = mSinAlpha[i];
+			
+			// f = f * [ct, -st*ca, st*sa, a*ct; st, ct*ca, -ct*sa, a*st; 0, sa, ca, d]
+			for (int r = 0; r < 3; r++) {
+				double f0 = f[r * 4];
+				double f1 = f[r * 4 + 1];
+				double f2 = f[r * 4 + 2];
+				f[r * 4] = f0 * ct + f1 * st;
+				f[r * 4 + 1] = -f0 * st * ca + f1 * ct * ca + f2 * sa;
+				f[r * 4 + 2] = f0 * st * sa - f1 * ct * sa + f2 * ca;
+				f[r * 4 + 3] += f0 * mA[i] * ct + f1 * mA[i] * st + f2 * mD[i];
+			}
+		}
+		
+		int t = 3 * mCount;
+		mOrigin[t] = f[3];
+		mOrigin[t + 1] = f[7];
+		mOrigin[t + 2] = f[11];
+	}
+
+	private double clamp(int joint, double theta) {
+		return Math.min(Math.max(theta, mMin[joint]), mMax[joint]);
+	}
+
+	// Solve m x = b for a 3 x 3 matrix by Cramer's rule, false if singular.
+	private static boolean solve3(double[] m, double[] b, double[] x) {
+		double c0 = m[4] * m[8] - m[5] * m[7];
+		double c1 = m[5] * m[6] - m[3] * m[8];
+		double c2 = m[3] * m[7] - m[4] * m[6];
+		double det = m[0] * c0 + m[1] * c1 + m[2] * c2;
+		if (Math.abs(det) < 1e-12) return false;
+		
+		x[0] = (b[0] * c0 + m[1] * (b[2] * m[5] - b[1] * m[8]) + m[2] * (b[1] * m[7] - b[2] * m[4])) / det;
+		x[1] = (m[0] * (b[1] * m[8] - b[2] * m[5]) + b[0] * c1 + m[2] * (b[2] * m[3] - b[1] * m[6])) / det;
+		x[2] = (m[0] * (b[2] * m[4] - b[1] * m[7]) + m[1] * (b[1] * m[6] - b[2] * m[3]) + b[0] * c2) / det;
+		return true;
+	}
+}
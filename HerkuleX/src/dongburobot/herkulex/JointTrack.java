@@ -0,0 +1,109 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.Arrays;
+
+/**
+ * Keyframes of one servo, in time order.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class JointTrack {
+
+	final int mID;
+	int mLed;
+	int mCount;
+	int[] mTimes;				// ms
+	float[] mAngles;			// degree
+	private int mCursor;		// segment of the last angleAt()
+
+	JointTrack(int servoID) {
+		mID = servoID;
+		mTimes = new int[8];
+		mAngles = new float[8];
+	}
+
+	JointTrack(JointTrack other) {
+		mID = other.mID;
+		mLed = other.mLed;
+		mCount = other.mCount;
+		mTimes = Arrays.copyOf(other.mTimes, Math.max(other.mCount, 1));
+		mAngles = Arrays.copyOf(other.mAngles, Math.max(other.mCount, 1));
+	}
+
+	/**
+	 * Add a keyframe, or replace the one at the same time.
+	 */
+	void add(int time, float angle) {
+		int i = Arrays.binarySearch(mTimes, 0, mCount, time);
+		if (i >= 0) {
+			mAngles[i] = angle;
+			return;
+		}
+		
+		if (mCount == mTimes.length) {
+			mTimes = Arrays.copyOf(mTimes, mCount * 2);
+			mAngles = Arrays.copyOf(mAngles, mCount * 2);
+		}
+		
+		i = -i - 1;
+		System.arraycopy(mTimes, i, mTimes, i + 1, mCount - i);
+		System.arraycopy(mAngles, i, mAngles, i + 1, mCount - i);
+		mTimes[i] = time;
+		mAngles[i] = angle;
+		mCount++;
+	}
+
+	/**
+	 * @return time of the last keyframe in ms, 0 if none
+	 */
+	int getDuration() {
+		return mCount == 0 ? 0 : mTimes[mCount - 1];
+	}
+
+	/**
+	 * Linear interpolation between keyframes; holds the first and the last one.
+	 * Fast when time goes forward from one call to the next.
+	 * 
+	 * @param time ms
+	 * @return angle in degree
+	 */
+	float angleAt(float time) {
+		if (time <= mTimes[0]) {
+			mCursor = 0;
+			return mAngles[0];
+		}
+		if (time >= mTimes[mCount - 1]) return mAngles[mCount - 1];
+		
+		if (mTimes[mCursor] > time) mCursor = 0;				// went back
+		while (mTimes[mCursor + 1] <= time) mCursor++;
+		
+		int t0 = mTimes[mCursor];
+		int t1 = mTimes[mCursor + 1];
+		float a0 = mAngles[mCursor];
+		return a0 + (mAngles[mCursor + 1] - a0) * (time - t0) / (t1 - t0);
+	}
+}
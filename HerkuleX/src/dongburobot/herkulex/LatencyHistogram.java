@@ -0,0 +1,153 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Round-trip times of one kind of command, as a histogram.
+ * 
+ * Buckets are 1 ns wide up to 16 ns, then 16 buckets per power of 2,
+ * so any time is known within about 6 %.
+ * This is a snapshot; it does not change once taken.
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Metrics
+ *
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BITS = 4;
+	static final int SUB_COUNT = 1 << SUB_BITS;
+	static final int MAX_BITS = 40;			// up to 2^40 ns, about 18 minutes
+	static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT;
+
+	private final long[] mBuckets;
+	private final long mCount;
+	private final long mSum;
+	private final long mMin;
+	private final long mMax;
+	private final long mTimeouts;
+
+	LatencyHistogram(long[] buckets, long count, long sum, long min, long max, long timeouts) {
+		mBuckets = buckets;
+		mCount = count;
+		mSum = sum;
+		mMin = min;
+		mMax = max;
+		mTimeouts = timeouts;
+	}
+
+	static int bucketOf(long ns) {
+		if (ns < SUB_COUNT) return (int) Math.max(ns, 0);
+		
+		int exp = 63 - Long.numberOfLeadingZeros(ns);
+		if (exp >= MAX_BITS) return BUCKETS - 1;
+		return (exp - SUB_BITS + 1) * SUB_COUNT + (int) ((ns >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+	}
+
+	// largest time that falls in the bucket
+	static long upperBound(int bucket) {
+		if (bucket < SUB_COUNT) return bucket;
+		
+		int exp = bucket / SUB_COUNT + SUB_BITS - 1;
+		int sub = bucket % SUB_COUNT;
+		long width = 1L << (exp - SUB_BITS);
+		return (SUB_COUNT + sub) * width + width - 1;
+	}
+
+	/**
+	 * Add up two histograms.
+	 */
+	LatencyHistogram merge(LatencyHistogram other) {
+		if (other == null || other.mCount + other.mTimeouts == 0) return this;
+		
+		long[] buckets = mBuckets.clone();
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] += other.mBuckets[i];
+		}
+		return new LatencyHistogram(buckets, mCount + other.mCount, mSum + other.mSum,
+				Math.min(mMin, other.mMin), Math.max(mMax, other.mMax), mTimeouts + other.mTimeouts);
+	}
+
+	static LatencyHistogram empty() {
+		return new LatencyHistogram(new long[BUCKETS], 0, 0, Long.MAX_VALUE, 0, 0);
+	}
+
+	/**
+	 * @return number of replies
+	 */
+	public long getCount() {
+		return mCount;
+	}
+
+	/**
+	 * @return number of requests without a reply
+	 */
+	public long getTimeouts() {
+		return mTimeouts;
+	}
+
+	/**
+	 * @return shortest round trip in microseconds, 0 if none
+	 */
+	public float getMin() {
+		return mCount == 0 ? 0 : mMin / 1000.0f;
+	}
+
+	/**
+	 * @return longest round trip in microseconds
+	 */
+	public float getMax() {
+		return mMax / 1000.0f;
+	}
+
+	/**
+	 * @return mean round trip in microseconds
+	 */
+	public float getMean() {
+		return mCount == 0 ? 0 : mSum / 1000.0f / mCount;
+	}
+
+	/**
+	 * @param percent 0 ~ 100, e.g. 50 for the median, 99 for the 99th percentile
+	 * @return round trip in microseconds that percent of the replies did not exceed
+	 */
+	public float getPercentile(double percent) {
+		if (mCount == 0) return 0;
+		
+		long rank = (long) Math.ceil(mCount * Math.min(Math.max(percent, 0), 100) / 100.0);
+		if (rank < 1) rank = 1;
+		
+		long seen = 0;
+		for (int i = 0; i < mBuckets.length; i++) {
+			seen += mBuckets[i];
+			if (seen >= rank) return Math.min(upperBound(i), mMax) / 1000.0f;
+		}
+		return getMax();
+	}
+
+	public String toString() {
+		return "n: " + mCount + ", timeouts: " + mTimeouts + ", mean: " + getMean() + " us, p50: "
+				+ getPercentile(50) + " us, p99: " + getPercentile(99) + " us, max: " + getMax() + " us";
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Live counters and latency histograms of one bus.
+ * Only exists while metrics are enabled, so a disabled HerkuleX pays one null check.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class MetricsRecorder {
+
+	static final int COMMANDS = 16;
+	static final int IDS = 254;
+
+	// one kind of command to one servo
+	private static class Latency {
+		final AtomicLongArray mBuckets = new AtomicLongArray(LatencyHistogram.BUCKETS);
+		final AtomicLong mCount = new AtomicLong();
+		final AtomicLong mSum = new AtomicLong();
+		final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+		final AtomicLong mMax = new AtomicLong();
+		final AtomicLong mTimeouts = new AtomicLong();
+
+		void record(long ns) {
+			mBuckets.incrementAndGet(LatencyHistogram.bucketOf(ns));
+			mSum.addAndGet(ns);
+			mCount.incrementAndGet();
+			
+			long min;
+			while (ns < (min = mMin.get()) && !mMin.compareAndSet(min, ns));
+			long max;
+			while (ns > (max = mMax.get()) && !mMax.compareAndSet(max, ns));
+		}
+
+		LatencyHistogram snapshot() {
+			long[] buckets = new long[LatencyHistogram.BUCKETS];
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = mBuckets.get(i);
+			}
+			return new LatencyHistogram(buckets, mCount.get(), mSum.get(), mMin.get(), mMax.get(), mTimeouts.get());
+		}
+	}
+
+	private final HerkuleX mHerkuleX;
+	private final AtomicReferenceArray<Latency> mLatency = new AtomicReferenceArray<Latency>(COMMANDS * IDS);
+	private final AtomicLong mTxBytes = new AtomicLong();
+	private final AtomicLong mRxBytes = new AtomicLong();
+	private final AtomicLong mTimeouts = new AtomicLong();
+	private final long mStart = System.nanoTime();
+	private final long mChecksumErrors0;		// decoder counters when recording started
+	private final long mDroppedBytes0;
+
+	MetricsRecorder(HerkuleX herkulex, long checksumErrors, long droppedBytes) {
+		mHerkuleX = herkulex;
+		mChecksumErrors0 = checksumErrors;
+		mDroppedBytes0 = droppedBytes;
+	}
+
+	void sent(int bytes) {
+		mTxBytes.addAndGet(bytes);
+	}
+
+	void received(int bytes) {
+		mRxBytes.addAndGet(bytes);
+	}
+
+	void roundTrip(int cmd, int servoID, long ns) {
+		Latency latency = latency(cmd, servoID);
+		if (latency != null) latency.record(ns);
+	}
+
+	void timeout(int cmd, int servoID) {
+		mTimeouts.incrementAndGet();
+		Latency latency = latency(cmd, servoID);
+		if (latency != null) latency.mTimeouts.incrementAndGet();
+	}
+
+	BusMetrics snapshot() {
+		LatencyHistogram[] histograms = new LatencyHistogram[COMMANDS * IDS];
+		for (int i = 0; i < histograms.length; i++) {
+			Latency latency = mLatency.get(i);
+			if (latency != null) histograms[i] = latency.snapshot();
+		}
+		
+		return new BusMetrics(histograms, mTxBytes.get(), mRxBytes.get(), mTimeouts.get(),
+				mHerkuleX.checksumErrors() - mChecksumErrors0, mHerkuleX.droppedBytes() - mDroppedBytes0,
+				System.nanoTime() - mStart, mHerkuleX.baudRate());
+	}
+
+	private Latency latency(int cmd, int servoID) {
+		if (servoID < 0 || servoID >= IDS) return null;
+		
+		int i = (cmd & (COMMANDS - 1)) * IDS + servoID;
+		Latency latency = mLatency.get(i);
+		if (latency == null) {
+			mLatency.compareAndSet(i, null, new Latency());
+			latency = mLatency.get(i);
+		}
+		return latency;
+	}
+
+	long getTxBytes() {
+		return mTxBytes.get();
+	}
+
+	long getRxBytes() {
+		return mRxBytes.get();
+	}
+
+	long getTimeouts() {
+		return mTimeouts.get();
+	}
+
+	/**
+	 * JMX view of the recorder a HerkuleX has now,
+	 * which changes when metrics are reset or turned off and on.
+	 */
+	static class Bean implements HerkuleXMetricsMXBean {
+
+		private final HerkuleX mHerkuleX;
+
+		Bean(HerkuleX herkulex) {
+			mHerkuleX = herkulex;
+		}
+
+		public long getTxBytes() {
+			MetricsRecorder metrics = mHerkuleX.metrics();
+			return metrics == null ? 0 : metrics.getTxBytes();
+		}
+
+		public long getRxBytes() {
+			MetricsRecorder metrics = mHerkuleX.metrics();
+			return metrics == null ? 0 : metrics.getRxBytes();
+		}
+
+		public long getTimeouts() {
+			MetricsRecorder metrics = mHerkuleX.metrics();
+			return metrics == null ? 0 : metrics.getTimeouts();
+		}
+
+		public long getChecksumErrors() {
+			return snapshot().getChecksumErrors();
+		}
+
+		public long getDroppedBytes() {
+			return snapshot().getDroppedBytes();
+		}
+
+		public float getBusUtilization() {
+			return snapshot().getBusUtilization();
+		}
+
+		public long getRoundTrips() {
+			return snapshot().getLatency().getCount();
+		}
+
+		public float getLatencyMean() {
+			return snapshot().getLatency().getMean();
+		}
+
+		public float getLatencyP50() {
+			return snapshot().getLatency().getPercentile(50);
+		}
+
+		public float getLatencyP99() {
+			return snapshot().getLatency().getPercentile(99);
+		}
+
+		public float getLatencyMax() {
+			return snapshot().getLatency().getMax();
+		}
+
+		public void reset() {
+			mHerkuleX.resetMetrics();
+		}
+
+		private BusMetrics snapshot() {
+			MetricsRecorder metrics = mHerkuleX.metrics();
+			if (metrics == null) {
+				return new BusMetrics(new LatencyHistogram[COMMANDS * IDS], 0, 0, 0, 0, 0, 0, 0);
+			}
+			return metrics.snapshot();
+		}
+	}
+}
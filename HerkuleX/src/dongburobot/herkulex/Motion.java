@@ -0,0 +1,257 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+/**
+ * A motion: keyframes of several servos, saved in a small binary file
+ * and compiled into S_JOG packets ahead of time for MotionPlayer.
+ * 
+ * Keyframe file, big endian:
+ * 	"HXKF", version(1), servo count(2),
+ * 	per servo: ID(1), LED(1), keyframe count(4), count x { time ms(4), angle(4, float) }
+ * 
+ * Compiled file, big endian:
+ * 	"HXMF", version(1), command(1), reserved(2), ns per tick(8),
+ * 	frame count(4), longest frame(4),
+ * 	per tick: length(2), packets(length) - length 0 when nothing changed
+ * 
+ * ex)  Motion motion = new Motion();
+ * 		motion.addKeyframe(0, 0, 0.0f);
+ * 		motion.addKeyframe(0, 1000, 90.0f);
+ * 		motion.compile("wave.hxm", 50);
+ * 		MotionPlayer.open(myHerkuleX, "wave.hxm").play();
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Motion_File
+ *
+ */
+public class Motion {
+
+	static final int KEYFRAME_MAGIC	= 0x48584B46;		// "HXKF"
+	static final int FRAME_MAGIC	= 0x48584D46;		// "HXMF"
+	static final int VERSION 		= 1;
+	static final int HEADER_SIZE	= 24;				// compiled file header
+
+	private static final int HSJOG 	= 0x06;
+
+	private final ArrayList<JointTrack> mJoints = new ArrayList<JointTrack>();
+
+	/**
+	 * Add a keyframe. Keyframes can be added in any order.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param time ms from the start
+	 * @param angle -167.0 ~ 167.0 degrees
+	 */
+	public void addKeyframe(int servoID, int time, float angle) {
+		if (time < 0 || angle > 167.0f || angle < -167.0f) return;
+		
+		joint(servoID).add(time, angle);
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public void setLed(int servoID, int led) {
+		joint(servoID).mLed = led;
+	}
+
+	/**
+	 * Remove all keyframes.
+	 */
+	public void clear() {
+		mJoints.clear();
+	}
+
+	/**
+	 * @return time of the last keyframe in ms
+	 */
+	public int getDuration() {
+		int duration = 0;
+		for (JointTrack joint : mJoints) {
+			duration = Math.max(duration, joint.getDuration());
+		}
+		return duration;
+	}
+
+	/**
+	 * Save the keyframes.
+	 * 
+	 * @param path file name
+	 * @return true - success, false - failure
+	 */
+	public boolean save(String path) {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(KEYFRAME_MAGIC);
+			out.writeByte(VERSION);
+			out.writeShort(mJoints.size());
+			
+			for (JointTrack joint : mJoints) {
+				out.writeByte(joint.mID);
+				out.writeByte(joint.mLed);
+				out.writeInt(joint.mCount);
+				for (int i = 0; i < joint.mCount; i++) {
+					out.writeInt(joint.mTimes[i]);
+					out.writeFloat(joint.mAngles[i]);
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			IO.close(out);
+		}
+	}
+
+	/**
+	 * Load keyframes saved with save().
+	 * 
+	 * @param path file name
+	 * @return the motion, null on failure
+	 */
+	public static Motion load(String path) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+			if (in.readInt() != KEYFRAME_MAGIC || in.readByte() != VERSION) {
+				throw new IOException(path + " is not a HerkuleX keyframe file");
+			}
+			
+			Motion motion = new Motion();
+			int joints = in.readUnsignedShort();
+			for (int j = 0; j < joints; j++) {
+				JointTrack joint = motion.joint(in.readUnsignedByte());
+				joint.mLed = in.readUnsignedByte();
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					joint.add(in.readInt(), in.readFloat());
+				}
+			}
+			return motion;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			IO.close(in);
+		}
+	}
+
+	/**
+	 * Turn the keyframes into S_JOG packets, one tick after another,
+	 * ready to be sent by MotionPlayer without any encoding.
+	 * Only the servos whose position changed are in a tick.
+	 * 
+	 * @param path compiled file name
+	 * @param rate ticks per second, 0.36 ~ 89
+	 * @return true - success, false - failure
+	 */
+	public boolean compile(String path, float rate) {
+		long period = Ticker.periodOf(rate);
+		int playTime = (int) (Ticker.playTimeOf(period) / 11.2f);	// ms --> value
+		long end = getDuration() * 1000000L;
+		int frames = (int) (end / period) + 1;
+		
+		JointTrack[] joints = new JointTrack[mJoints.size()];
+		int[] last = new int[joints.length];
+		for (int j = 0; j < joints.length; j++) {
+			joints[j] = new JointTrack(mJoints.get(j));
+			last[j] = -1;
+		}
+		
+		MoveBuffer moves = new MoveBuffer(false);
+		PacketEncoder encoder = new PacketEncoder(new byte[2048]);
+		
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 65536));
+			out.writeInt(FRAME_MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(HSJOG);
+			out.writeShort(0);
+			out.writeLong(period);
+			out.writeInt(frames);
+			out.writeInt(0);							// longest frame, written at the end
+			
+			int longest = 0;
+			for (int f = 0; f < frames; f++) {
+				float ms = Math.min(f * period, end) / 1000000.0f;
+				
+				for (int j = 0; j < joints.length; j++) {
+					JointTrack joint = joints[j];
+					if (joint.mCount == 0) continue;
+					
+					int position = (int) (joint.angleAt(ms) / 0.325) + 512;
+					if (position == last[j]) continue;
+					last[j] = position;
+					moves.put(joint.mID, position & 0xFF, (position >> 8) & 0xFF, joint.mLed & 0xFD, 0);
+				}
+				
+				encoder.reset();
+				moves.writeTo(encoder, HSJOG, HerkuleX.SJOG_MAX_SERVO, playTime, null);
+				out.writeShort(encoder.length());
+				out.write(encoder.getBuffer(), 0, encoder.length());
+				longest = Math.max(longest, encoder.length());
+			}
+			out.close();
+			out = null;
+			
+			RandomAccessFile file = new RandomAccessFile(path, "rw");
+			try {
+				file.seek(HEADER_SIZE - 4);
+				file.writeInt(longest);
+			} finally {
+				file.close();
+			}
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			IO.close(out);
+		}
+	}
+
+	private JointTrack joint(int servoID) {
+		for (JointTrack joint : mJoints) {
+			if (joint.mID == servoID) return joint;
+		}
+		JointTrack joint = new JointTrack(servoID);
+		mJoints.add(joint);
+		return joint;
+	}
+}
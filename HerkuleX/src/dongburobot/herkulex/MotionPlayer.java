@@ -0,0 +1,235 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays a file compiled by Motion.compile().
+ * 
+ * The file is memory-mapped, not loaded: the packets are read from the
+ * mapping one tick at a time and sent as they are, so a long motion costs
+ * no encoding and no heap beyond one packet buffer.
+ * Ticks are scheduled like TrajectoryPlayer. Ticks only hold the servos
+ * that changed, so the entries of missed ticks are merged into the next
+ * tick sent, the latest one of each servo winning, and a late end still
+ * sends the last tick.
+ * 
+ * ex)  MotionPlayer player = MotionPlayer.open(myHerkuleX, "dance.hxm");
+ * 		player.play();
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Motion_File
+ *
+ */
+public class MotionPlayer {
+
+	private final HerkuleX mHerkuleX;
+	private final MappedByteBuffer mFrames;
+	private final int mFrameCount;
+	private final byte[] mPacket;
+	private final int mCommand;
+	private final MoveBuffer mMerged = new MoveBuffer(false);	// entries of missed ticks
+	private final PacketEncoder mEncoder = new PacketEncoder(new byte[2048]);
+	private final Ticker mTicker;
+	private volatile boolean mLoop;
+
+	// read position, only touched by the ticker thread
+	private int mFrame;
+	private int mOffset;
+	private boolean mPlayingLoop;
+	private boolean mMissed;
+	private int mPlayTime;
+
+	private MotionPlayer(HerkuleX herkulex, MappedByteBuffer frames) throws IOException {
+		if (frames.getInt(0) != Motion.FRAME_MAGIC || frames.get(4) != Motion.VERSION) {
+			throw new IOException("not a compiled HerkuleX motion file");
+		}
+		
+		mHerkuleX = herkulex;
+		mFrames = frames;
+		mFrameCount = frames.getInt(16);
+		mPacket = new byte[Math.max(frames.getInt(20), 1)];
+		mCommand = frames.get(5);
+		mTicker = new Ticker("HerkuleX motion", frames.getLong(8), new Ticker.Task() {
+			public boolean tick(long tick) {
+				return playTick(tick);
+			}
+		});
+	}
+
+	/**
+	 * Map a compiled motion file.
+	 * 
+	 * @param herkulex servos to drive
+	 * @param path file written by Motion.compile()
+	 * @return the player, null on failure
+	 */
+	public static MotionPlayer open(HerkuleX herkulex, String path) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(path, "r");
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer frames = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new MotionPlayer(herkulex, frames);		// the mapping outlives the file
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			IO.close(file);
+		}
+	}
+
+	/**
+	 * @param loop true - start over after the last tick
+	 */
+	public void setLoop(boolean loop) {
+		mLoop = loop;
+	}
+
+	/**
+	 * @return number of ticks in the file
+	 */
+	public int getFrameCount() {
+		return mFrameCount;
+	}
+
+	/**
+	 * @return length of the motion in ms
+	 */
+	public int getDuration() {
+		return (int) ((mFrameCount - 1) * mTicker.getPeriod() / 1000000L);
+	}
+
+	/**
+	 * Start playing from the first tick.
+	 */
+	public synchronized void play() {
+		mTicker.stop();
+		if (mFrameCount == 0) return;
+		
+		mFrame = 0;
+		mOffset = Motion.HEADER_SIZE;
+		mPlayingLoop = mLoop;
+		mMissed = false;
+		mEncoder.reset();
+		mMerged.writeTo(mEncoder, mCommand, HerkuleX.SJOG_MAX_SERVO, 0, null);	// drop leftovers
+		mTicker.start();
+	}
+
+	/**
+	 * Stop playing. The servos finish their last move.
+	 */
+	public synchronized void stop() {
+		mTicker.stop();
+	}
+
+	/**
+	 * @return true while playing
+	 */
+	public boolean isPlaying() {
+		return mTicker.isRunning();
+	}
+
+	/**
+	 * @return number of ticks sent since play()
+	 */
+	public long getTickCount() {
+		return mTicker.getTickCount();
+	}
+
+	/**
+	 * @return number of ticks skipped because they were more than one period late
+	 */
+	public long getMissedDeadlines() {
+		return mTicker.getMissed();
+	}
+
+	/**
+	 * @return the latest a tick has started after its deadline, in ms
+	 */
+	public float getMaxLateness() {
+		return mTicker.getMaxLateness() / 1000000.0f;
+	}
+
+	private boolean playTick(long tick) {
+		if (mPlayingLoop) {
+			tick %= mFrameCount;
+		} else if (tick >= mFrameCount) {
+			tick = mFrameCount - 1;						// late for the end, send the last tick
+		}
+		
+		if (tick < mFrame) {							// looped
+			while (mFrame < mFrameCount) skipFrame();
+			mFrame = 0;
+			mOffset = Motion.HEADER_SIZE;
+		}
+		while (mFrame < tick) {							// missed ticks
+			skipFrame();
+		}
+		
+		int len = mFrames.getShort(mOffset) & 0xFFFF;
+		if (mMissed) {
+			merge(mOffset + 2, len);
+			mEncoder.reset();
+			mMerged.writeTo(mEncoder, mCommand, HerkuleX.SJOG_MAX_SERVO, mPlayTime, null);
+			mHerkuleX.write(mEncoder.getBuffer(), 0, mEncoder.length());
+			mMissed = false;
+		} else if (len > 0) {
+			mFrames.position(mOffset + 2);
+			mFrames.get(mPacket, 0, len);
+			mHerkuleX.write(mPacket, 0, len);
+		}
+		mOffset += 2 + len;
+		mFrame++;
+		
+		return mPlayingLoop || mFrame < mFrameCount;
+	}
+	
+	// Keep the entries of the tick at the read position for the next tick sent
+	private void skipFrame() {
+		int len = mFrames.getShort(mOffset) & 0xFFFF;
+		merge(mOffset + 2, len);
+		mOffset += 2 + len;
+		mFrame++;
+	}
+	
+	// Add the S_JOG entries of the packets at off ~ off+len to mMerged
+	private void merge(int off, int len) {
+		int end = off + len;
+		while (off < end) {
+			int size = mFrames.get(off + 2) & 0xFF;
+			mPlayTime = mFrames.get(off + Packet.HEADER_SIZE) & 0xFF;
+			for (int e = off + Packet.HEADER_SIZE + 1; e + 4 <= off + size; e += 4) {
+				// LSB, MSB, SET, ID
+				mMerged.put(mFrames.get(e + 3), mFrames.get(e), mFrames.get(e + 1), mFrames.get(e + 2), 0);
+			}
+			mMissed = true;
+			off += size;
+		}
+	}
+}
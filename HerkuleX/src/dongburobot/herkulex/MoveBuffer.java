@@ -0,0 +1,100 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Servo entries waiting for actionAll() or actionAllIndividual().
+ * 
+ * One slot per servo ID; adding the same ID again overwrites it.
+ * Each slot is one atomic long, so any number of threads can add
+ * entries without a lock while another one takes them out.
+ * Entries are written straight into a PacketEncoder, split into as
+ * many JOG packets as needed.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class MoveBuffer {
+
+	private static final long USED = 1L << 32;
+
+	private final boolean mTimed;		// I_JOG entries carry their own playtime
+	private final AtomicLongArray mSlots = new AtomicLongArray(256);
+
+	/**
+	 * @param timed false for S_JOG, true for I_JOG
+	 */
+	MoveBuffer(boolean timed) {
+		mTimed = timed;
+	}
+
+	/**
+	 * Add or overwrite the entry of servoID.
+	 * playTime is only used for I_JOG entries.
+	 */
+	void put(int servoID, int lsb, int msb, int set, int playTime) {
+		long entry = USED | (lsb & 0xFF) | (msb & 0xFF) << 8 | (set & 0xFF) << 16 | (long) (playTime & 0xFF) << 24;
+		mSlots.set(servoID & 0xFF, entry);
+	}
+
+	/**
+	 * Take out all entries and write them as broadcast JOG packets
+	 * of at most perPacket servos each.
+	 * 
+	 * @param encoder destination
+	 * @param cmd HSJOG or HIJOG
+	 * @param perPacket max servos in one packet
+	 * @param playTime S_JOG playtime (value, not ms), ignored for I_JOG
+	 * @param shadow told the LED of every servo written, may be null
+	 * @return number of servos written
+	 */
+	int writeTo(PacketEncoder encoder, int cmd, int perPacket, int playTime, RegisterShadow shadow) {
+		int count = 0;
+		
+		for (int id = 0; id < 256; id++) {
+			if (mSlots.get(id) == 0) continue;
+			long entry = mSlots.getAndSet(id, 0);
+			if (entry == 0) continue;				// taken by someone else
+			
+			if (count % perPacket == 0) {
+				if (count > 0) encoder.end();
+				encoder.begin(0xFE, cmd);
+				if (!mTimed) encoder.put(playTime);
+			}
+			
+			encoder.put((int) entry & 0xFF);			// LSB
+			encoder.put((int) (entry >> 8) & 0xFF);		// MSB
+			encoder.put((int) (entry >> 16) & 0xFF);	// SET
+			encoder.put(id);							// ID
+			if (mTimed) encoder.put((int) (entry >> 24) & 0xFF);	// Playtime
+			if (shadow != null) shadow.jog(id, (int) (entry >> 16) & 0xFF);
+			count++;
+		}
+		
+		if (count > 0) encoder.end();
+		return count;
+	}
+}
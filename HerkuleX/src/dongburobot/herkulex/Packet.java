@@ -0,0 +1,139 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * One decoded HerkuleX packet.
+ *
+ * [0xFF][0xFF][Size][ID][CMD][Checksum1][Checksum2][Data...]
+ *
+ * A Packet is filled by PacketDecoder and reused for the next one,
+ * so copy out what you need before decoding again.
+ *
+ * @author DongbuRobot
+ *
+ */
+public class Packet {
+
+	static final int HEADER_SIZE 	= 7;
+	static final int MAX_SIZE 		= 223;
+
+	final byte[] mBuf = new byte[MAX_SIZE];
+	int mSize;
+
+	/**
+	 * @return packet size in bytes (header included)
+	 */
+	public int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * @return servo ID 0 ~ 254
+	 */
+	public int getID() {
+		return mBuf[3] & 0xFF;
+	}
+
+	/**
+	 * @return command. ACK packets have 0x40 added to the request command.
+	 */
+	public int getCommand() {
+		return mBuf[4] & 0xFF;
+	}
+
+	/**
+	 * @return true if this is a reply from a servo
+	 */
+	public boolean isAck() {
+		return (mBuf[4] & 0x40) == 0x40;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param cmd request command
+	 * @return true if this is the reply of servoID to cmd
+	 */
+	public boolean isAckOf(int servoID, int cmd) {
+		return mBuf[3] == (byte) servoID && mBuf[4] == (byte) (cmd | 0x40);
+	}
+
+	/**
+	 * @param index 0 ~ getSize()-1, position in the packet
+	 * @return the byte at index
+	 */
+	public byte get(int index) {
+		return mBuf[index];
+	}
+
+	/**
+	 * @return number of bytes after the header
+	 */
+	public int getDataLength() {
+		return mSize - HEADER_SIZE;
+	}
+
+	/**
+	 * @param index 0 ~ getDataLength()-1
+	 * @return data byte at index
+	 */
+	public byte getData(int index) {
+		return mBuf[HEADER_SIZE + index];
+	}
+
+	/**
+	 * Status error of an ACK packet. (last but one byte)
+	 *
+	 * @return HerkuleX.H_STATUS_OK or HerkuleX.H_ERROR_xxx bits
+	 */
+	public byte getStatusError() {
+		return mBuf[mSize - 2];
+	}
+
+	/**
+	 * Status detail of an ACK packet. (last byte)
+	 *
+	 * @return status detail bits
+	 */
+	public byte getStatusDetail() {
+		return mBuf[mSize - 1];
+	}
+
+	void copyFrom(Packet other) {
+		System.arraycopy(other.mBuf, 0, mBuf, 0, other.mSize);
+		mSize = other.mSize;
+	}
+
+	/**
+	 * Copy the whole packet.
+	 *
+	 * @param dst destination
+	 * @param off offset in dst
+	 * @return number of bytes copied (getSize())
+	 */
+	public int copyTo(byte[] dst, int off) {
+		System.arraycopy(mBuf, 0, dst, off, mSize);
+		return mSize;
+	}
+}
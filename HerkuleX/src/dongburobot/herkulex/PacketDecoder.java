@@ -0,0 +1,194 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Incremental decoder for HerkuleX packets.
+ *
+ * Bytes can be fed in any split as they come from the port.
+ * The decoder syncs on the 0xFF 0xFF header, finds the end of the packet
+ * with the size byte and checks Checksum1/Checksum2.
+ * Garbage and broken packets are skipped and it resyncs on the next header.
+ *
+ * Nothing is allocated after construction.
+ *
+ * ex)  decoder.feed(buf, 0, n);
+ * 		while (decoder.next(packet)) {
+ * 		  println(packet.getID());
+ * 		}
+ *
+ * @author DongbuRobot
+ *
+ */
+public class PacketDecoder {
+
+	private static final int RING_SIZE = 1024;			// power of 2
+	private static final int RING_MASK = RING_SIZE - 1;
+
+	// decoder state
+	private static final int SYNC = 0;		// looking for 0xFF 0xFF
+	private static final int SIZE = 1;		// header found, waiting for packet size
+	private static final int BODY = 2;		// waiting for the rest of the packet
+
+	private final byte[] mRing = new byte[RING_SIZE];
+	private int mHead;		// first byte of the packet being decoded
+	private int mTail;		// next byte to write
+	private int mState = SYNC;
+	private int mPktSize;
+
+	private long mPackets;
+	private long mDroppedBytes;
+	private long mChecksumErrors;
+
+	/**
+	 * Append received bytes.
+	 * When the buffer is full, the oldest bytes are dropped.
+	 *
+	 * @param buf received bytes
+	 * @param off offset in buf
+	 * @param len number of bytes
+	 */
+	public void feed(byte[] buf, int off, int len) {
+		for (int i = 0; i < len; i++) {
+			if (mTail - mHead == RING_SIZE) {		// overflow
+				mHead++;
+				mDroppedBytes++;
+				mState = SYNC;
+			}
+			mRing[mTail++ & RING_MASK] = buf[off + i];
+		}
+	}
+
+	/**
+	 * Decode the next valid packet.
+	 *
+	 * @param packet filled with the packet on success
+	 * @return false if more bytes are needed
+	 */
+	public boolean next(Packet packet) {
+		while (true) {
+			int avail = mTail - mHead;
+
+			switch (mState) {
+			case SYNC:
+				if (avail < 2) return false;
+				if (at(0) == (byte) 0xFF && at(1) == (byte) 0xFF) {
+					mState = SIZE;
+				} else {
+					skip();
+				}
+				break;
+
+			case SIZE:
+				if (avail < 3) return false;
+				mPktSize = at(2) & 0xFF;
+				if (mPktSize < Packet.HEADER_SIZE || mPktSize > Packet.MAX_SIZE) {
+					skip();
+				} else {
+					mState = BODY;
+				}
+				break;
+
+			default:	// BODY
+				if (avail < mPktSize) return false;
+				if (!isValid()) {
+					mChecksumErrors++;
+					skip();				// maybe a false header, resync from the next byte
+					break;
+				}
+
+				for (int i = 0; i < mPktSize; i++) {
+					packet.mBuf[i] = at(i);
+				}
+				packet.mSize = mPktSize;
+
+				mHead += mPktSize;
+				mState = SYNC;
+				mPackets++;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Drop everything buffered.
+	 */
+	public void reset() {
+		mDroppedBytes += mTail - mHead;
+		mHead = mTail;
+		mState = SYNC;
+	}
+
+	/**
+	 * @return number of bytes not decoded yet
+	 */
+	public int available() {
+		return mTail - mHead;
+	}
+
+	/**
+	 * @return number of valid packets decoded
+	 */
+	public long getPacketCount() {
+		return mPackets;
+	}
+
+	/**
+	 * @return number of bytes skipped while looking for a valid packet
+	 */
+	public long getDroppedBytes() {
+		return mDroppedBytes;
+	}
+
+	/**
+	 * @return number of packets rejected by Checksum1/Checksum2
+	 */
+	public long getChecksumErrors() {
+		return mChecksumErrors;
+	}
+
+	private byte at(int index) {
+		return mRing[(mHead + index) & RING_MASK];
+	}
+
+	private void skip() {
+		mHead++;
+		mDroppedBytes++;
+		mState = SYNC;
+	}
+
+	// Checksum1 = (Size ^ ID ^ CMD ^ Data...) & 0xFE, Checksum2 = ~Checksum1 & 0xFE
+	private boolean isValid() {
+		byte chksum1 = (byte) (at(2) ^ at(3) ^ at(4));
+		for (int i = Packet.HEADER_SIZE; i < mPktSize; i++) {
+			chksum1 ^= at(i);
+		}
+		chksum1 &= 0xFE;
+
+		if (chksum1 != at(5)) return false;
+		if (((~chksum1) & 0xFE) != (at(6) & 0xFF)) return false;
+
+		return true;
+	}
+}
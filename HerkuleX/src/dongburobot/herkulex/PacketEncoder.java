@@ -0,0 +1,146 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Writes HerkuleX packets straight into a byte array.
+ * 
+ * Checksum1 is computed while the bytes are written,
+ * and several packets can be written back to back to go out in one write.
+ * Nothing is allocated; the buffer belongs to the caller.
+ * 
+ * ex)  encoder.begin(servoID, 0x03);	// RAM write
+ * 		encoder.put(0x35);				// Address
+ * 		encoder.put(0x01);				// Length
+ * 		encoder.put(0x04);				// Value
+ * 		encoder.end();
+ * 		transport.write(encoder.getBuffer(), 0, encoder.length());
+ * 
+ * @author DongbuRobot
+ *
+ */
+public class PacketEncoder {
+
+	private final byte[] mBuf;
+	private int mStart;			// first byte of the current packet
+	private int mPos;
+	private int mChecksum;		// ID ^ CMD ^ Data...
+
+	/**
+	 * @param buf buffer to write packets into
+	 */
+	public PacketEncoder(byte[] buf) {
+		mBuf = buf;
+	}
+
+	/**
+	 * Start a packet after the ones already written.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE : BROADCAST_ID
+	 * @param cmd command
+	 */
+	public void begin(int servoID, int cmd) {
+		mStart = mPos;
+		mBuf[mPos] 		= (byte) 0xFF;			// Packet Header
+		mBuf[mPos + 1] 	= (byte) 0xFF;			// Packet Header
+		mBuf[mPos + 3] 	= (byte) servoID;		// Servo ID
+		mBuf[mPos + 4] 	= (byte) cmd;			// Command
+		mPos += Packet.HEADER_SIZE;
+		mChecksum = servoID ^ cmd;
+	}
+
+	/**
+	 * Append one data byte to the current packet.
+	 * 
+	 * @param value 0 ~ 255
+	 */
+	public void put(int value) {
+		mBuf[mPos++] = (byte) value;
+		mChecksum ^= value;
+	}
+
+	/**
+	 * Append two data bytes, LSB first.
+	 * 
+	 * @param value 0 ~ 65535
+	 */
+	public void putWord(int value) {
+		put(value & 0xFF);
+		put((value >> 8) & 0xFF);
+	}
+
+	/**
+	 * Finish the current packet: size, Checksum1 and Checksum2.
+	 * 
+	 * @return packet size in bytes
+	 */
+	public int end() {
+		int size = mPos - mStart;
+		if (size > Packet.MAX_SIZE) {
+			throw new IllegalStateException("HerkuleX packet too long: " + size);
+		}
+		
+		int chksum1 = (mChecksum ^ size) & 0xFE;
+		mBuf[mStart + 2] = (byte) size;					// Packet Size
+		mBuf[mStart + 5] = (byte) chksum1;				// Checksum 1
+		mBuf[mStart + 6] = (byte) ((~chksum1) & 0xFE);	// Checksum 2
+		return size;
+	}
+
+	/**
+	 * Forget everything written.
+	 */
+	public void reset() {
+		mPos = 0;
+		mStart = 0;
+	}
+
+	/**
+	 * @return offset of the last packet begun
+	 */
+	public int packetOffset() {
+		return mStart;
+	}
+
+	/**
+	 * @return number of bytes written
+	 */
+	public int length() {
+		return mPos;
+	}
+
+	/**
+	 * @return number of bytes left in the buffer
+	 */
+	public int remaining() {
+		return mBuf.length - mPos;
+	}
+
+	/**
+	 * @return the buffer packets are written into
+	 */
+	public byte[] getBuffer() {
+		return mBuf;
+	}
+}
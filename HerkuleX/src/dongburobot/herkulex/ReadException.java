@@ -0,0 +1,99 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * No valid reply came to a read within its retries and time budget.
+ * 
+ * getReason() tells what was seen on the line on the last try.
+ * It is a TimeoutException, so code waiting on the asynchronous reads
+ * for a TimeoutException still catches it.
+ * 
+ * ex)  try {
+ * 		  int pos = myHerkuleX.readPosition(1);
+ * 		} catch (ReadException e) {
+ * 		  if (e.getReason() == ReadException.CHECKSUM) println("noisy line");
+ * 		}
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Read_Retry
+ *
+ */
+public class ReadException extends TimeoutException {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Nothing came back */
+	public static final int TIMEOUT			= 1;
+	/** A reply was broken (Checksum1/Checksum2) */
+	public static final int CHECKSUM		= 2;
+	/** Only replies from other servos came back */
+	public static final int WRONG_ID		= 3;
+	/** The servo replied to another command or register */
+	public static final int WRONG_COMMAND	= 4;
+
+	private final int mReason;
+	private final int mServoID;
+	private final int mAttempts;
+
+	ReadException(int reason, int servoID, int attempts) {
+		super("No valid reply from servo " + servoID + ": " + nameOf(reason) + " (" + attempts
+				+ (attempts == 1 ? " try)" : " tries)"));
+		mReason = reason;
+		mServoID = servoID;
+		mAttempts = attempts;
+	}
+
+	/**
+	 * @return TIMEOUT, CHECKSUM, WRONG_ID or WRONG_COMMAND
+	 */
+	public int getReason() {
+		return mReason;
+	}
+
+	/**
+	 * @return ID of the servo that was read
+	 */
+	public int getServoID() {
+		return mServoID;
+	}
+
+	/**
+	 * @return number of times the request was sent
+	 */
+	public int getAttempts() {
+		return mAttempts;
+	}
+
+	private static String nameOf(int reason) {
+		switch (reason) {
+		case CHECKSUM:		return "checksum error";
+		case WRONG_ID:		return "wrong ID";
+		case WRONG_COMMAND:	return "wrong command";
+		default:			return "timeout";
+		}
+	}
+}
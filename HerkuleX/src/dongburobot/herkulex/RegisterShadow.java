@@ -0,0 +1,319 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.Arrays;
+
+/**
+ * What the PC knows of the RAM registers of every servo.
+ * 
+ * Writes record the value they send; a write of a value the servo is known
+ * to hold already is redundant and is not sent. Replies refresh the values
+ * they carry. Anything the servo may have changed by itself is forgotten,
+ * and status error and detail are never taken as known for a write.
+ * 
+ * A write that was not acknowledged stays pending: the servo may have
+ * missed it. Pending values are forgotten as soon as the servo shows it
+ * lost a packet, by not replying or by reporting an invalid packet.
+ * 
+ * Broadcast writes are kept in a row of their own: a broadcast of the same
+ * value twice is redundant, but a broadcast tells nothing sure about a single
+ * servo (it may have missed it), so it forgets that address for every servo.
+ * A write or read of one servo that disagrees forgets the broadcast value.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class RegisterShadow {
+
+	static final int RAM_SIZE = 128;
+
+	private static final int BROADCAST = 254;		// row of the last broadcast values
+	private static final int ROWS = 255;
+
+	// RAM addresses
+	private static final int STATUS_ERROR	= 0x30;
+	private static final int STATUS_DETAIL	= 0x31;
+	private static final int TORQUE_CONTROL	= 0x34;
+	private static final int LED_CONTROL	= 0x35;
+	private static final int PWM_END		= 0x41;		// 0x30 ~ 0x41: status and sensor values
+
+	private final byte[] mValues = new byte[ROWS * RAM_SIZE];
+	private final long[] mValid = new long[ROWS * 2];	// one bit per address
+	private final long[] mPending = new long[ROWS * 2];	// written, not acknowledged
+
+	private long mHits;
+	private long mMisses;
+	private long mSavedBytes;
+
+	/**
+	 * Record a RAM write.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address first register
+	 * @param length 1 ~ 4
+	 * @param value the bytes, first register in the lowest byte
+	 * @return true if the write is redundant and need not be sent
+	 */
+	synchronized boolean write(int servoID, int address, int length, int value) {
+		int row = servoID & 0xFF;
+		if (row >= ROWS || address < 0 || address + length > RAM_SIZE) return false;
+		if (isStatus(address, length)) {
+			forget(row, address, length);		// the servo sets them by itself
+			sent(row, address, length);
+			return false;
+		}
+		
+		if (holds(row, address, length, value)) {
+			mHits++;
+			mSavedBytes += Packet.HEADER_SIZE + 2 + length;
+			return true;
+		}
+		
+		mMisses++;
+		set(row, address, length, value);
+		pend(row, address, length);
+		sent(row, address, length);
+		return false;
+	}
+
+	/**
+	 * Record a RAM write of any length that is sent anyway.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address first register
+	 * @param values register values
+	 * @param off offset in values
+	 * @param length number of registers
+	 * @param acked true if the servo acknowledged the write
+	 */
+	synchronized void record(int servoID, int address, byte[] values, int off, int length, boolean acked) {
+		int row = servoID & 0xFF;
+		if (row >= ROWS || address < 0 || address + length > RAM_SIZE) return;
+		
+		mMisses++;
+		for (int i = 0; i < length; i++) {
+			set(row, address + i, 1, values[off + i]);
+		}
+		if (!acked) pend(row, address, length);
+		sent(row, address, length);
+	}
+
+	/**
+	 * Same rule as write(), without recording anything.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address register
+	 * @param value 0 ~ 255
+	 * @return true if writing value would be redundant
+	 */
+	synchronized boolean holds(int servoID, int address, int value) {
+		int row = servoID & 0xFF;
+		if (row >= ROWS || address < 0 || address >= RAM_SIZE || isStatus(address, 1)) return false;
+		return holds(row, address, 1, value);
+	}
+
+	/**
+	 * Registers the servo updates by itself (status, voltage, temperature,
+	 * positions, PWM): known values are only a reading and must never be
+	 * written back, e.g. to fill a gap.
+	 * 
+	 * @param address register
+	 */
+	static boolean isTelemetry(int address) {
+		return address >= STATUS_ERROR && address <= PWM_END;
+	}
+
+	/**
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address register
+	 * @return known value 0 ~ 255, -1 if unknown
+	 */
+	synchronized int get(int servoID, int address) {
+		int row = servoID & 0xFF;
+		if (row >= ROWS || address < 0 || address >= RAM_SIZE || !isValid(row, address)) return -1;
+		return mValues[row * RAM_SIZE + address] & 0xFF;
+	}
+
+	/**
+	 * Refresh from a reply.
+	 * RAM read replies carry register values, every reply carries status error and detail.
+	 */
+	synchronized void observe(Packet ack) {
+		int row = ack.getID();
+		if (row >= BROADCAST || ack.getSize() < Packet.HEADER_SIZE + 2) return;
+		
+		if (ack.getCommand() == 0x44 && ack.getSize() >= 9) {		// RAM read ACK
+			int address = ack.get(7) & 0xFF;
+			int length = Math.min(ack.get(8) & 0xFF, ack.getSize() - 11);
+			for (int i = 0; i < length && address + i < RAM_SIZE; i++) {
+				refresh(row, address + i, ack.get(9 + i));
+			}
+		}
+		
+		byte error = ack.getStatusError();
+		refresh(row, STATUS_ERROR, error);
+		refresh(row, STATUS_DETAIL, ack.getStatusDetail());
+		
+		if ((error & HerkuleX.H_ERROR_INVALID_PKT) != 0) lost(row);
+		if (error != 0) {					// the alarm policy may have released torque or set the LED
+			forget(row, TORQUE_CONTROL, 2);
+			forget(BROADCAST, TORQUE_CONTROL, 2);
+		}
+	}
+
+	/**
+	 * A JOG entry sets the LED of the servo.
+	 * 
+	 * @param set SET byte of the entry
+	 */
+	synchronized void jog(int servoID, int set) {
+		int row = servoID & 0xFF;
+		if (row >= ROWS) return;
+		if (row == BROADCAST) {					// every servo may have a new LED now
+			for (int id = 0; id < ROWS; id++) {
+				forget(id, LED_CONTROL, 1);
+			}
+			return;
+		}
+		
+		set(row, LED_CONTROL, 1, (set >> 2) & 0x07);		// SET G/B/R bits 2~4 --> LED register bits 0~2
+		pend(row, LED_CONTROL, 1);
+		forget(BROADCAST, LED_CONTROL, 1);
+	}
+
+	/**
+	 * The servo did not reply or reported an invalid packet: it may have
+	 * missed the writes that were not acknowledged, broadcasts too.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 */
+	synchronized void lost(int servoID) {
+		int row = servoID & 0xFF;
+		if (row >= BROADCAST) return;
+		
+		for (int i = 0; i < 2; i++) {
+			mValid[row * 2 + i] &= ~mPending[row * 2 + i];
+			mPending[row * 2 + i] = 0;
+			mValid[BROADCAST * 2 + i] &= ~mPending[BROADCAST * 2 + i];
+			mPending[BROADCAST * 2 + i] = 0;
+		}
+	}
+
+	/**
+	 * Forget everything about a servo, after a reboot or a power cycle.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = all servos
+	 */
+	synchronized void forget(int servoID) {
+		int row = servoID & 0xFF;
+		if (row == BROADCAST) {
+			Arrays.fill(mValid, 0);
+			Arrays.fill(mPending, 0);
+			return;
+		}
+		if (row > BROADCAST) return;
+		
+		forget(row, 0, RAM_SIZE);
+		forget(BROADCAST, 0, RAM_SIZE);
+	}
+
+	/**
+	 * Forget one register of every servo.
+	 */
+	synchronized void forgetAddress(int address) {
+		for (int row = 0; row < ROWS; row++) {
+			forget(row, address, 1);
+		}
+	}
+
+	synchronized long getHits() {
+		return mHits;
+	}
+
+	synchronized long getMisses() {
+		return mMisses;
+	}
+
+	synchronized long getSavedBytes() {
+		return mSavedBytes;
+	}
+
+	private static boolean isStatus(int address, int length) {
+		return address <= STATUS_DETAIL && address + length > STATUS_ERROR;
+	}
+
+	private boolean holds(int row, int address, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (!isValid(row, address + i)) return false;
+			if (mValues[row * RAM_SIZE + address + i] != (byte) (value >> (8 * i))) return false;
+		}
+		return true;
+	}
+
+	private void set(int row, int address, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			mValues[row * RAM_SIZE + address + i] = (byte) (value >> (8 * i));
+			mValid[row * 2 + ((address + i) >> 6)] |= 1L << (address + i);
+		}
+	}
+
+	private void pend(int row, int address, int length) {
+		for (int i = address; i < address + length; i++) {
+			mPending[row * 2 + (i >> 6)] |= 1L << i;
+		}
+	}
+
+	// a broadcast write says nothing sure about one servo, a write to one servo
+	// makes the broadcast value stale
+	private void sent(int row, int address, int length) {
+		if (row == BROADCAST) {
+			for (int id = 0; id < BROADCAST; id++) {
+				forget(id, address, length);
+			}
+		} else {
+			forget(BROADCAST, address, length);
+		}
+	}
+
+	// a value read from a servo; drop the broadcast value if they disagree
+	private void refresh(int row, int address, byte value) {
+		set(row, address, 1, value);
+		mPending[row * 2 + (address >> 6)] &= ~(1L << address);
+		if (isValid(BROADCAST, address) && mValues[BROADCAST * RAM_SIZE + address] != value) {
+			forget(BROADCAST, address, 1);
+		}
+	}
+
+	private void forget(int row, int address, int length) {
+		for (int i = address; i < address + length; i++) {
+			mValid[row * 2 + (i >> 6)] &= ~(1L << i);
+			mPending[row * 2 + (i >> 6)] &= ~(1L << i);
+		}
+	}
+
+	private boolean isValid(int row, int address) {
+		return (mValid[row * 2 + (address >> 6)] & (1L << address)) != 0;
+	}
+}
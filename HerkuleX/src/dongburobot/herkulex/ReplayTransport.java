@@ -0,0 +1,269 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a file written by HerkuleX.startCapture() as if the servos were there.
+ * 
+ * Received bytes come back at the time they were captured, or as fast as
+ * they are read. While following writes (the default), the replies after a
+ * request are only released once the same request bytes have been written,
+ * timed from that write, so a program replays the way it ran.
+ * Written bytes that differ from the capture are counted.
+ * 
+ * ex)  ReplayTransport replay = ReplayTransport.open("bus.hxc", true);
+ * 		HerkuleX myHerkuleX = new HerkuleX(replay);
+ * 
+ * To feed a decoder as fast as possible, without a HerkuleX:
+ * 		replay = ReplayTransport.open("bus.hxc", false);
+ * 		replay.setFollowWrites(false);
+ * 		while (!replay.isFinished()) {
+ * 		  decoder.feed(buf, 0, replay.read(buf));
+ * 		  while (decoder.next(packet)) { ... }
+ * 		}
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Capture
+ *
+ */
+public class ReplayTransport implements Transport {
+
+	private final MappedByteBuffer mData;
+	private final int mBaudRate;
+	private final boolean mRealTime;
+	private volatile boolean mFollowWrites = true;
+
+	// one entry per record
+	private final int mCount;
+	private final long[] mTime;
+	private final byte[] mDirection;
+	private final int[] mOffset;		// of the bytes in mData
+	private final int[] mLength;
+
+	private int mReleased;				// records before this one are released
+	private int mAvailable;				// released RX bytes not read yet
+	private int mCursor;				// next RX byte to read: record and offset in it
+	private int mCursorOff;
+	private int mTxRecord;				// next TX byte expected: record and offset in it
+	private int mTxOff;
+	private long mMismatches;
+
+	private long mAnchorWall;			// replay clock: this System.nanoTime()
+	private long mAnchorLog;			// matches this capture time
+	private boolean mStarted;
+
+	private ReplayTransport(MappedByteBuffer data, boolean realTime) throws IOException {
+		if (data.limit() < WireCapture.HEADER_SIZE || data.getInt(0) != WireCapture.MAGIC
+				|| data.get(4) != WireCapture.VERSION) {
+			throw new IOException("not a HerkuleX capture file");
+		}
+		
+		mData = data;
+		mBaudRate = data.getInt(5);
+		mRealTime = realTime;
+		
+		int count = 0;
+		for (int off = WireCapture.HEADER_SIZE; off + WireCapture.RECORD_HEADER <= data.limit(); ) {
+			off += WireCapture.RECORD_HEADER + data.getInt(off + 9);
+			if (off > data.limit()) break;			// cut short, e.g. power lost while capturing
+			count++;
+		}
+		
+		mCount = count;
+		mTime = new long[count];
+		mDirection = new byte[count];
+		mOffset = new int[count];
+		mLength = new int[count];
+		
+		int off = WireCapture.HEADER_SIZE;
+		for (int i = 0; i < count; i++) {
+			mTime[i] = data.getLong(off);
+			mDirection[i] = data.get(off + 8);
+			mLength[i] = data.getInt(off + 9);
+			mOffset[i] = off + WireCapture.RECORD_HEADER;
+			off = mOffset[i] + mLength[i];
+		}
+		
+		rewind();
+	}
+
+	/**
+	 * Load a capture file.
+	 * 
+	 * @param path file written by HerkuleX.startCapture()
+	 * @param realTime true - at the captured speed, false - as fast as possible
+	 * @return the transport, null on failure
+	 */
+	public static ReplayTransport open(String path, boolean realTime) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(path, "r");
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ReplayTransport(data, realTime);		// the mapping outlives the file
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			IO.close(file);
+		}
+	}
+
+	/**
+	 * @param follow true - replies wait for their request to be written,
+	 * false - replies come back on time whatever is written
+	 */
+	public void setFollowWrites(boolean follow) {
+		mFollowWrites = follow;
+	}
+
+	/**
+	 * Start again from the beginning of the capture.
+	 */
+	public synchronized void rewind() {
+		mReleased = 0;
+		mAvailable = 0;
+		mCursor = nextRecord(0, WireCapture.RX);
+		mCursorOff = 0;
+		mTxRecord = nextRecord(0, WireCapture.TX);
+		mTxOff = 0;
+		mMismatches = 0;
+		mStarted = false;
+	}
+
+	/**
+	 * @return number of port writes and reads captured
+	 */
+	public int getFrameCount() {
+		return mCount;
+	}
+
+	/**
+	 * @return number of written bytes that were not in the capture
+	 */
+	public synchronized long getMismatches() {
+		return mMismatches;
+	}
+
+	/**
+	 * @return true when every received byte has been read
+	 */
+	public synchronized boolean isFinished() {
+		return mCursor == mCount;
+	}
+
+	// Transport
+
+	public synchronized void write(byte[] buf, int off, int len) {
+		for (int i = 0; i < len; i++) {
+			if (mTxRecord == mCount) {				// more than was captured
+				mMismatches++;
+				continue;
+			}
+			
+			if (mData.get(mOffset[mTxRecord] + mTxOff) != buf[off + i]) mMismatches++;
+			
+			if (++mTxOff == mLength[mTxRecord]) {
+				if (mFollowWrites) {
+					mAnchorWall = System.nanoTime();	// the replies are timed from here
+					mAnchorLog = mTime[mTxRecord];
+					mStarted = true;
+				}
+				mTxRecord = nextRecord(mTxRecord + 1, WireCapture.TX);
+				mTxOff = 0;
+			}
+		}
+	}
+
+	public synchronized int available() {
+		release();
+		return mAvailable;
+	}
+
+	public synchronized int read(byte[] buf) {
+		release();
+		
+		int n = 0;
+		while (n < buf.length && mAvailable > 0) {
+			int len = Math.min(buf.length - n, mLength[mCursor] - mCursorOff);
+			mData.position(mOffset[mCursor] + mCursorOff);
+			mData.get(buf, n, len);
+			n += len;
+			mAvailable -= len;
+			mCursorOff += len;
+			
+			if (mCursorOff == mLength[mCursor]) {
+				mCursor = nextRecord(mCursor + 1, WireCapture.RX);
+				mCursorOff = 0;
+			}
+		}
+		return n;
+	}
+
+	public synchronized void clear() {
+		release();
+		
+		while (mAvailable > 0) {
+			int len = mLength[mCursor] - mCursorOff;
+			mAvailable -= len;
+			mCursor = nextRecord(mCursor + 1, WireCapture.RX);
+			mCursorOff = 0;
+		}
+	}
+
+	public int getBaudRate() {
+		return mBaudRate;
+	}
+
+	// Make the received bytes that are due readable.
+	private void release() {
+		long now = System.nanoTime();
+		if (!mStarted) {
+			mAnchorWall = now;
+			mAnchorLog = mCount == 0 ? 0 : mTime[0];
+			mStarted = true;
+		}
+		
+		while (mReleased < mCount) {
+			int i = mReleased;
+			if (mDirection[i] == WireCapture.TX) {
+				if (mFollowWrites && i >= mTxRecord) return;	// not written yet
+			} else {
+				if (mRealTime && now - mAnchorWall < mTime[i] - mAnchorLog) return;
+				mAvailable += mLength[i];
+			}
+			mReleased++;
+		}
+	}
+
+	private int nextRecord(int from, byte direction) {
+		while (from < mCount && mDirection[from] != direction) from++;
+		return from;
+	}
+}
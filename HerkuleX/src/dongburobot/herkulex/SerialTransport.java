@@ -0,0 +1,73 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import processing.serial.Serial;
+
+/**
+ * Transport over processing.serial.Serial.
+ * 
+ * @author DongbuRobot
+ *
+ */
+public class SerialTransport implements Transport {
+
+	private final Serial mPort;
+
+	public SerialTransport(Serial port) {
+		mPort = port;
+	}
+
+	/**
+	 * @return the Serial port
+	 */
+	public Serial getSerial() {
+		return mPort;
+	}
+
+	public void write(byte[] buf, int off, int len) {
+		try {
+			mPort.output.write(buf, off, len);	// Serial.write(byte[]) can only send a whole array
+			mPort.output.flush();
+		} catch (Exception e) {
+			Serial.errorMessage("write", e);
+		}
+	}
+
+	public int available() {
+		return mPort.available();
+	}
+
+	public int read(byte[] buf) {
+		return mPort.readBytes(buf);
+	}
+
+	public void clear() {
+		mPort.clear();
+	}
+
+	public int getBaudRate() {
+		return mPort.rate > 0 ? mPort.rate : 115200;
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * A servo found on the line.
+ *
+ * @author DongbuRobot
+ * @example HerkuleX_Get_IDs
+ *
+ */
+public class ServoInfo {
+
+	private final int mID;
+	private final int mModel;
+	private final int mVersion;
+
+	public ServoInfo(int servoID, int model, int version) {
+		mID = servoID;
+		mModel = model;
+		mVersion = version;
+	}
+
+	/**
+	 * @return servo ID 0 ~ 253
+	 */
+	public int getID() {
+		return mID;
+	}
+
+	/**
+	 * @return Model No1. 1 = DRS-0101, 2 = DRS-0201
+	 */
+	public int getModel() {
+		return mModel;
+	}
+
+	/**
+	 * @return firmware version (Version1 << 8 | Version2)
+	 */
+	public int getVersion() {
+		return mVersion;
+	}
+
+	public String toString() {
+		return "ID: " + mID + ", model: " + mModel + ", version: " + mVersion;
+	}
+}
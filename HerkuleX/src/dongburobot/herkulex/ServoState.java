@@ -0,0 +1,184 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Servo state read with one RAM read. (RAM 0x30 ~ 0x41)
+ * 
+ * Fill the same object again and again with readState(servoID, state).
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Read_State
+ *
+ */
+public class ServoState {
+
+	// RAM register map - See Manual p27
+	static final int RAM_STATUS_ERROR		= 0x30;
+	static final int RAM_READ_LENGTH		= 18;		// 0x30 ~ 0x41
+
+	private int mID = -1;
+	private byte mStatusError;
+	private byte mStatusDetail;
+	private int mVoltage;
+	private int mTemperature;
+	private int mPosition;
+	private int mAbsolutePosition;
+	private int mDiffPosition;
+	private int mPWM;
+	private long mTime;
+
+	// Decode the ACK of a RAM read from 0x30, 18 bytes
+	void decode(Packet ack) {
+		mID 				= ack.getID();
+		mStatusError 		= ack.get(9);		// 0x30
+		mStatusDetail 		= ack.get(10);		// 0x31
+		mVoltage 			= ack.get(15) & 0xFF;	// 0x36
+		mTemperature 		= ack.get(16) & 0xFF;	// 0x37
+		mPosition 			= word(ack, 19) & 0x03FF;	// 0x3A
+		mAbsolutePosition 	= word(ack, 21) & 0x03FF;	// 0x3C
+		mDiffPosition 		= (short) word(ack, 23);	// 0x3E
+		mPWM 				= (short) word(ack, 25);	// 0x40
+		mTime 				= System.nanoTime();
+	}
+	
+	// Two longs for the lock-free state cache
+	long packLow() {
+		return (mStatusError & 0xFFL) | (mStatusDetail & 0xFFL) << 8
+				| (long) mVoltage << 16 | (long) mTemperature << 24
+				| (long) mPosition << 32 | (long) mAbsolutePosition << 48;
+	}
+	
+	long packHigh() {
+		return (mDiffPosition & 0xFFFFL) | (mPWM & 0xFFFFL) << 16 | (long) mID << 32;
+	}
+	
+	void unpack(long low, long high, long time) {
+		mStatusError 		= (byte) low;
+		mStatusDetail 		= (byte) (low >> 8);
+		mVoltage 			= (int) (low >> 16) & 0xFF;
+		mTemperature 		= (int) (low >> 24) & 0xFF;
+		mPosition 			= (int) (low >> 32) & 0xFFFF;
+		mAbsolutePosition 	= (int) (low >>> 48);
+		mDiffPosition 		= (short) high;
+		mPWM 				= (short) (high >> 16);
+		mID 				= (int) (high >> 32);
+		mTime 				= time;
+	}
+
+	private static int word(Packet ack, int index) {
+		return ((ack.get(index + 1) & 0xFF) << 8) | (ack.get(index) & 0xFF);
+	}
+
+	/**
+	 * @return System.nanoTime() when this state was read
+	 */
+	public long getTime() {
+		return mTime;
+	}
+	
+	/**
+	 * @return servo ID, -1 before the first read
+	 */
+	public int getID() {
+		return mID;
+	}
+
+	/**
+	 * @return HerkuleX.H_STATUS_OK or HerkuleX.H_ERROR_xxx bits
+	 */
+	public byte getStatusError() {
+		return mStatusError;
+	}
+
+	/**
+	 * @return status detail bits
+	 */
+	public byte getStatusDetail() {
+		return mStatusDetail;
+	}
+
+	/**
+	 * @return input voltage raw value (x 0.074 V)
+	 */
+	public int getVoltageRaw() {
+		return mVoltage;
+	}
+
+	/**
+	 * @return input voltage in V
+	 */
+	public float getVoltage() {
+		return mVoltage * 0.074f;
+	}
+
+	/**
+	 * @return temperature raw value. See the conversion table in the manual.
+	 */
+	public int getTemperatureRaw() {
+		return mTemperature;
+	}
+
+	/**
+	 * @return calibrated position 0 ~ 1023, same as getPosition()
+	 */
+	public int getPosition() {
+		return mPosition;
+	}
+
+	/**
+	 * @return calibrated position in degrees -166.7 ~ 166.7, same as getAngle()
+	 */
+	public float getAngle() {
+		return (mPosition - 512) * 0.325f;
+	}
+
+	/**
+	 * @return absolute position 0 ~ 1023
+	 */
+	public int getAbsolutePosition() {
+		return mAbsolutePosition;
+	}
+
+	/**
+	 * @return differential position (speed) [CW:Negative Value(-), CCW:Positive Value(+)]
+	 */
+	public int getDifferentialPosition() {
+		return mDiffPosition;
+	}
+
+	/**
+	 * @return PWM -1023 ~ 1023
+	 */
+	public int getPWM() {
+		return mPWM;
+	}
+
+	public String toString() {
+		return "ID: " + mID + ", status: " + mStatusError + "/" + mStatusDetail
+				+ ", position: " + mPosition + ", absolute: " + mAbsolutePosition
+				+ ", speed: " + mDiffPosition + ", PWM: " + mPWM
+				+ ", voltage: " + mVoltage + ", temperature: " + mTemperature;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest ServoState of each servo ID.
+ * Writers take turns on the cache's monitor; readers never lock.
+ * 
+ * Each slot carries a sequence number which is odd while the slot is
+ * being written, and readers retry if it changed while they were reading.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class StateCache {
+
+	private static final int STRIDE = 4;		// sequence, low, high, time
+
+	private final AtomicLongArray mSlots = new AtomicLongArray(256 * STRIDE);
+
+	/**
+	 * Publish a state.
+	 */
+	synchronized void publish(ServoState state) {
+		int base = (state.getID() & 0xFF) * STRIDE;
+		long seq = mSlots.get(base);
+		
+		mSlots.set(base, seq + 1);						// odd: writing
+		mSlots.set(base + 1, state.packLow());
+		mSlots.set(base + 2, state.packHigh());
+		mSlots.set(base + 3, state.getTime());
+		mSlots.set(base, seq + 2);						// even: done
+	}
+
+	/**
+	 * @param servoID 0 ~ 253
+	 * @param state filled with the latest state
+	 * @return false if servoID has never been published
+	 */
+	boolean read(int servoID, ServoState state) {
+		int base = (servoID & 0xFF) * STRIDE;
+		
+		while (true) {
+			long seq = mSlots.get(base);
+			if (seq == 0) return false;
+			if ((seq & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			
+			long low = mSlots.get(base + 1);
+			long high = mSlots.get(base + 2);
+			long time = mSlots.get(base + 3);
+			
+			if (mSlots.get(base) == seq) {
+				state.unpack(low, high, time);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return calibrated position of the latest state, -1 if none
+	 */
+	int getPosition(int servoID) {
+		int base = (servoID & 0xFF) * STRIDE;
+		
+		while (true) {
+			long seq = mSlots.get(base);
+			if (seq == 0) return -1;
+			long low = mSlots.get(base + 1);
+			if ((seq & 1) == 0 && mSlots.get(base) == seq) return (int) (low >> 32) & 0xFFFF;
+			Thread.yield();
+		}
+	}
+	
+	/**
+	 * @return System.nanoTime() of the latest state, 0 if none
+	 */
+	long getTime(int servoID) {
+		int base = (servoID & 0xFF) * STRIDE;
+		
+		while (true) {
+			long seq = mSlots.get(base);
+			if (seq == 0) return 0;
+			long time = mSlots.get(base + 3);
+			if ((seq & 1) == 0 && mSlots.get(base) == seq) return time;
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * @return number of states published for servoID
+	 */
+	long getSequence(int servoID) {
+		return mSlots.get((servoID & 0xFF) * STRIDE) >> 1;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background thread that reads the state of some servos at a fixed rate.
+ * Every successful readState() lands in the HerkuleX state cache.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class TelemetryPoller implements Runnable {
+
+	private final HerkuleX mHerkuleX;
+	private final int[] mIDs;
+	private final long mPeriod;			// ns per sweep
+	private final ServoState mState = new ServoState();
+
+	private volatile boolean mRunning;
+	private Thread mThread;
+
+	/**
+	 * @param herkulex servos to poll
+	 * @param servoIDs IDs to read in one sweep
+	 * @param rate sweeps per second
+	 */
+	TelemetryPoller(HerkuleX herkulex, int[] servoIDs, float rate) {
+		mHerkuleX = herkulex;
+		mIDs = servoIDs.clone();
+		mPeriod = (long) (1000000000L / rate);
+	}
+
+	void start() {
+		mRunning = true;
+		mThread = new Thread(this, "HerkuleX poller");
+		mThread.setDaemon(true);
+		mThread.start();
+	}
+
+	void stop() {
+		mRunning = false;
+		LockSupport.unpark(mThread);
+		try {
+			mThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void run() {
+		long next = System.nanoTime();
+		
+		while (mRunning) {
+			for (int i = 0; i < mIDs.length && mRunning; i++) {
+				mHerkuleX.readState(mIDs[i], mState);
+			}
+			
+			next += mPeriod;
+			long left = next - System.nanoTime();
+			if (left > 0) {
+				LockSupport.parkNanos(this, left);
+			} else {
+				next = System.nanoTime();	// sweep took longer than the period, do not burst
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread that calls a task at a fixed rate.
+ * 
+ * Deadlines are start + n * period from System.nanoTime(), so a late
+ * tick does not push the next ones back. The thread parks until shortly
+ * before a deadline and yields for the rest. A tick that starts more than
+ * one period late is skipped and counted as missed; the task gets the
+ * number of the current tick so it can catch up.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class Ticker implements Runnable {
+
+	interface Task {
+		/**
+		 * @param tick number of the tick since start, skipped ticks included
+		 * @return false to stop
+		 */
+		boolean tick(long tick);
+	}
+
+	private static final long SPIN_TIME = 200000L;		// ns, yield instead of park this close to a deadline
+
+	private final String mName;
+	private final long mPeriod;			// ns
+	private final Task mTask;
+
+	private volatile boolean mRunning;
+	private Thread mThread;
+
+	private volatile long mTicks;
+	private volatile long mMissed;
+	private volatile long mMaxLateness;	// ns
+
+	/**
+	 * @param rate ticks per second, 0.36 ~ 89
+	 * @return ns per tick
+	 */
+	static long periodOf(float rate) {
+		if (!(rate >= 0.36f && rate <= 89.3f)) {
+			throw new IllegalArgumentException("rate must be 0.36 ~ 89 ticks per second");
+		}
+		return (long) (1000000000L / rate);
+	}
+
+	/**
+	 * S_JOG play time is counted in 11.2 ms. One tick is rounded up so
+	 * the servo is still moving when the next target comes.
+	 * 
+	 * @param period ns per tick
+	 * @return play time in ms, 0 ~ 2856
+	 */
+	static int playTimeOf(long period) {
+		int value = (int) Math.ceil(period / 11200000.0);
+		return Math.min((int) Math.ceil(value * 11.2), 2856);
+	}
+
+	/**
+	 * @param name thread name
+	 * @param period ns per tick
+	 * @param task called on every tick
+	 */
+	Ticker(String name, long period, Task task) {
+		mName = name;
+		mPeriod = period;
+		mTask = task;
+	}
+
+	void start() {
+		stop();
+		
+		mTicks = 0;
+		mMissed = 0;
+		mMaxLateness = 0;
+		
+		mRunning = true;
+		mThread = new Thread(this, mName);
+		mThread.setDaemon(true);
+		mThread.setPriority(Thread.MAX_PRIORITY);
+		mThread.start();
+	}
+
+	void stop() {
+		if (mThread == null) return;
+		
+		mRunning = false;
+		LockSupport.unpark(mThread);
+		if (Thread.currentThread() != mThread) {
+			try {
+				mThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		mThread = null;
+	}
+
+	boolean isRunning() {
+		return mRunning;
+	}
+
+	long getPeriod() {
+		return mPeriod;
+	}
+
+	long getTickCount() {
+		return mTicks;
+	}
+
+	long getMissed() {
+		return mMissed;
+	}
+
+	long getMaxLateness() {
+		return mMaxLateness;
+	}
+
+	public void run() {
+		long start = System.nanoTime();
+		long tick = 0;
+		
+		while (mRunning) {
+			long deadline = start + tick * mPeriod;
+			waitUntil(deadline);
+			if (!mRunning) break;
+			
+			long late = System.nanoTime() - deadline;
+			if (late > mMaxLateness) mMaxLateness = late;
+			if (late > mPeriod) {						// skip to the current tick
+				long skip = late / mPeriod;
+				mMissed += skip;
+				tick += skip;
+			}
+			
+			boolean more;
+			try {
+				more = mTask.tick(tick);
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				more = false;
+			}
+			mTicks++;
+			
+			if (!more) break;
+			tick++;
+		}
+		
+		mRunning = false;
+	}
+
+	private void waitUntil(long deadline) {
+		while (mRunning) {
+			long left = deadline - System.nanoTime();
+			if (left <= 0) return;
+			
+			if (left > SPIN_TIME) {
+				LockSupport.parkNanos(this, left - SPIN_TIME);
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+}
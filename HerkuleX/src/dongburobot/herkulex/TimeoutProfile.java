@@ -0,0 +1,305 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * How long each servo takes to answer, learned from its replies.
+ * 
+ * A read waits for the time its request and reply take on the wire at the
+ * current baudrate, plus the response time of the servo: the mean of the
+ * last replies plus k standard deviations, kept between a floor and a ceiling.
+ * Until a servo has answered a few times, the ack timeout is used instead.
+ * Each timeout in a row doubles the wait of that servo, up to 8 times.
+ * 
+ * File, big endian:
+ * 	"HXTP", version(1), k(float), floor(long ns), ceiling(long ns), servo count(1),
+ * 	per servo: ID(1), samples(int), mean(double ns), variance(double ns^2)
+ * 
+ * ex)  myHerkuleX.setAdaptiveTimeout(true);
+ * 		...
+ * 		myHerkuleX.getTimeoutProfile().save("timeouts.hxt");
+ * 		...
+ * 		myHerkuleX.setTimeoutProfile(TimeoutProfile.load("timeouts.hxt"));
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Adaptive_Timeout
+ *
+ */
+public class TimeoutProfile {
+
+	private static final int MAGIC = 0x48585450;		// "HXTP"
+	private static final int VERSION = 1;
+
+	private static final int MIN_SAMPLES = 4;			// before that, the ack timeout is used
+	private static final double GAIN = 1.0 / 8;			// weight of a new sample
+	private static final int MAX_BACKOFF = 3;			// 2^3 = 8 times after timeouts in a row
+
+	private float mK = 4;
+	private long mFloor = 1000000L;						// ns
+	private long mCeiling = 100000000L;
+
+	// by ID, response time = round trip - wire time
+	private final int[] mSamples = new int[254];
+	private final double[] mMean = new double[254];
+	private final double[] mVariance = new double[254];
+	private final int[] mMisses = new int[254];
+
+	/**
+	 * @param k number of standard deviations added to the mean response time (default: 4)
+	 */
+	public synchronized void setK(float k) {
+		if (k < 0) return;
+		mK = k;
+	}
+
+	/**
+	 * @return number of standard deviations added to the mean response time
+	 */
+	public synchronized float getK() {
+		return mK;
+	}
+
+	/**
+	 * @param floor shortest wait in ms (default: 1 ms)
+	 */
+	public synchronized void setFloor(float floor) {
+		if (floor < 0) return;
+		mFloor = (long) (floor * 1000000L);
+	}
+
+	/**
+	 * @return shortest wait in ms
+	 */
+	public synchronized float getFloor() {
+		return mFloor / 1000000.0f;
+	}
+
+	/**
+	 * @param ceiling longest wait in ms (default: 100 ms)
+	 */
+	public synchronized void setCeiling(float ceiling) {
+		if (ceiling <= 0) return;
+		mCeiling = (long) (ceiling * 1000000L);
+	}
+
+	/**
+	 * @return longest wait in ms
+	 */
+	public synchronized float getCeiling() {
+		return mCeiling / 1000000.0f;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return number of replies learned from
+	 */
+	public synchronized int getSamples(int servoID) {
+		return isID(servoID) ? mSamples[servoID] : 0;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return true if the servo has answered often enough to use its own timeout
+	 */
+	public synchronized boolean isLearned(int servoID) {
+		return getSamples(servoID) >= MIN_SAMPLES;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return mean response time in ms, wire time not included
+	 */
+	public synchronized float getMean(int servoID) {
+		return isID(servoID) ? (float) (mMean[servoID] / 1000000.0) : 0;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return standard deviation of the response time in ms
+	 */
+	public synchronized float getDeviation(int servoID) {
+		return isID(servoID) ? (float) (Math.sqrt(mVariance[servoID]) / 1000000.0) : 0;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return number of timeouts in a row
+	 */
+	public synchronized int getMisses(int servoID) {
+		return isID(servoID) ? mMisses[servoID] : 0;
+	}
+
+	/**
+	 * Forget what was learned about a servo.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID (all servos)
+	 */
+	public synchronized void clear(int servoID) {
+		for (int id = 0; id < mSamples.length; id++) {
+			if (servoID != 0xFE && servoID != id) continue;
+			mSamples[id] = 0;
+			mMean[id] = 0;
+			mVariance[id] = 0;
+			mMisses[id] = 0;
+		}
+	}
+
+	/**
+	 * How long to wait for a reply.
+	 * 
+	 * @param wire time the request and the reply take on the wire, ns
+	 * @param fallback response time to allow for a servo not learned yet, ns
+	 * @return timeout in ns
+	 */
+	synchronized long timeout(int servoID, long wire, long fallback) {
+		long timeout = wire + fallback;
+		if (isID(servoID)) {
+			if (mSamples[servoID] >= MIN_SAMPLES) {
+				timeout = wire + (long) (mMean[servoID] + mK * Math.sqrt(mVariance[servoID]));
+			}
+			timeout <<= Math.min(mMisses[servoID], MAX_BACKOFF);
+		}
+		return Math.min(Math.max(timeout, mFloor), mCeiling);
+	}
+
+	/**
+	 * @param response round trip minus wire time, ns
+	 */
+	synchronized void sample(int servoID, long response) {
+		if (!isID(servoID)) return;
+		if (response < 0) response = 0;		// baudrate not what the port says, or bytes buffered early
+		
+		if (mSamples[servoID] == 0) {
+			mMean[servoID] = response;
+			mVariance[servoID] = response * (double) response / 4;
+		} else {
+			double diff = response - mMean[servoID];
+			mMean[servoID] += GAIN * diff;
+			mVariance[servoID] = (1 - GAIN) * (mVariance[servoID] + GAIN * diff * diff);
+		}
+		if (mSamples[servoID] < Integer.MAX_VALUE) mSamples[servoID]++;
+		mMisses[servoID] = 0;
+	}
+
+	synchronized void miss(int servoID) {
+		if (isID(servoID) && mMisses[servoID] < Integer.MAX_VALUE) mMisses[servoID]++;
+	}
+
+	/**
+	 * @param path file name
+	 * @return true - success, false - failure
+	 */
+	public synchronized boolean save(String path) {
+		int count = 0;
+		for (int id = 0; id < mSamples.length; id++) {
+			if (mSamples[id] > 0) count++;
+		}
+		
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeFloat(mK);
+			out.writeLong(mFloor);
+			out.writeLong(mCeiling);
+			out.writeByte(count);
+			for (int id = 0; id < mSamples.length; id++) {
+				if (mSamples[id] == 0) continue;
+				out.writeByte(id);
+				out.writeInt(mSamples[id]);
+				out.writeDouble(mMean[id]);
+				out.writeDouble(mVariance[id]);
+			}
+			out.close();
+			out = null;
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			IO.close(out);
+		}
+	}
+
+	/**
+	 * @param path file written by save()
+	 * @return the profile, null on failure
+	 */
+	public static TimeoutProfile load(String path) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				throw new IOException(path + " is not a HerkuleX timeout profile");
+			}
+			
+			TimeoutProfile profile = new TimeoutProfile();
+			profile.mK = in.readFloat();
+			profile.mFloor = in.readLong();
+			profile.mCeiling = in.readLong();
+			int count = in.readUnsignedByte();
+			for (int i = 0; i < count; i++) {
+				int id = in.readUnsignedByte();
+				int samples = in.readInt();
+				double mean = in.readDouble();
+				double variance = in.readDouble();
+				if (!profile.isID(id)) continue;
+				profile.mSamples[id] = samples;
+				profile.mMean[id] = mean;
+				profile.mVariance[id] = variance;
+			}
+			return profile;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			IO.close(in);
+		}
+	}
+
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int id = 0; id < mSamples.length; id++) {
+			if (mSamples[id] == 0) continue;
+			if (sb.length() > 0) sb.append('\n');
+			sb.append("ID: ").append(id).append(", samples: ").append(mSamples[id])
+					.append(", mean: ").append(getMean(id)).append(" ms, deviation: ")
+					.append(getDeviation(id)).append(" ms");
+		}
+		return sb.toString();
+	}
+
+	private boolean isID(int servoID) {
+		return servoID >= 0 && servoID < mSamples.length;
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.ArrayList;
+
+/**
+ * Plays keyframed joint angles by streaming S_JOG packets at a fixed rate.
+ * 
+ * Keyframes are (time, angle) points per servo. On every tick the angle of
+ * each servo is interpolated on the PC and all of them are sent with one
+ * actionAll(), with a play time of one tick, so the servos glide from one
+ * target to the next.
+ * 
+ * Ticks run on their own thread against deadlines computed from the start
+ * time (start + n * period), so a late tick does not push the next ones back.
+ * A tick that starts more than one period late is counted as missed and
+ * skipped; playback continues at the current time.
+ * 
+ * ex)  TrajectoryPlayer player = new TrajectoryPlayer(myHerkuleX, 50);	// 50 ticks/s
+ * 		player.addKeyframe(0, 0, 0.0f);
+ * 		player.addKeyframe(0, 1000, 90.0f);
+ * 		player.addKeyframe(0, 2000, 0.0f);
+ * 		player.play();
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Trajectory
+ *
+ */
+public class TrajectoryPlayer {
+
+	private final HerkuleX mHerkuleX;
+	private final Ticker mTicker;
+	private final int mPlayTime;		// ms, one tick rounded up to 11.2 ms
+	private final ArrayList<JointTrack> mJoints = new ArrayList<JointTrack>();
+	private boolean mLoop;
+
+	// what is playing, only touched by the ticker thread after play()
+	private JointTrack[] mPlaying;
+	private boolean mPlayingLoop;
+	private long mEnd;					// ns
+	private long mLap;					// ticks per lap when looping
+
+	/**
+	 * @param herkulex servos to drive
+	 * @param rate ticks per second, 0.36 ~ 89 (play time 2856 ~ 11.2 ms)
+	 */
+	public TrajectoryPlayer(HerkuleX herkulex, float rate) {
+		mHerkuleX = herkulex;
+		mTicker = new Ticker("HerkuleX trajectory", Ticker.periodOf(rate), new Ticker.Task() {
+			public boolean tick(long tick) {
+				return playTick(tick);
+			}
+		});
+		mPlayTime = Ticker.playTimeOf(mTicker.getPeriod());
+	}
+
+	/**
+	 * Add a keyframe. Keyframes can be added in any order.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param time ms from the start
+	 * @param angle -167.0 ~ 167.0 degrees
+	 */
+	public synchronized void addKeyframe(int servoID, int time, float angle) {
+		if (time < 0 || angle > 167.0f || angle < -167.0f) return;
+		
+		joint(servoID).add(time, angle);
+	}
+
+	/**
+	 * LED of a servo while playing.
+	 * 
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @param led HerkuleX.LED_RED | HerkuleX.LED_GREEN | HerkuleX.LED_BLUE
+	 */
+	public synchronized void setLed(int servoID, int led) {
+		joint(servoID).mLed = led;
+	}
+
+	/**
+	 * Remove all keyframes.
+	 */
+	public synchronized void clear() {
+		mJoints.clear();
+	}
+
+	/**
+	 * @param loop true - start over after the last keyframe
+	 */
+	public synchronized void setLoop(boolean loop) {
+		mLoop = loop;
+	}
+
+	/**
+	 * @return time of the last keyframe in ms
+	 */
+	public synchronized int getDuration() {
+		int duration = 0;
+		for (JointTrack joint : mJoints) {
+			duration = Math.max(duration, joint.getDuration());
+		}
+		return duration;
+	}
+
+	/**
+	 * @return play time sent with every tick in ms
+	 */
+	public int getPlayTime() {
+		return mPlayTime;
+	}
+
+	/**
+	 * Start playing from time 0. Keyframes added while playing are used next time.
+	 */
+	public synchronized void play() {
+		mTicker.stop();
+		
+		ArrayList<JointTrack> joints = new ArrayList<JointTrack>();
+		for (JointTrack joint : mJoints) {
+			if (joint.mCount > 0) joints.add(new JointTrack(joint));
+		}
+		if (joints.isEmpty()) return;
+		
+		mPlaying = joints.toArray(new JointTrack[joints.size()]);
+		mPlayingLoop = mLoop;
+		mEnd = getDuration() * 1000000L;
+		mLap = mEnd / mTicker.getPeriod() + 1;
+		mTicker.start();
+	}
+
+	/**
+	 * Stop playing. The servos finish their last move.
+	 */
+	public synchronized void stop() {
+		mTicker.stop();
+	}
+
+	/**
+	 * @return true while playing
+	 */
+	public boolean isPlaying() {
+		return mTicker.isRunning();
+	}
+
+	/**
+	 * @return number of ticks sent since play()
+	 */
+	public long getTickCount() {
+		return mTicker.getTickCount();
+	}
+
+	/**
+	 * @return number of ticks skipped because they were more than one period late
+	 */
+	public long getMissedDeadlines() {
+		return mTicker.getMissed();
+	}
+
+	/**
+	 * @return the latest a tick has started after its deadline, in ms
+	 */
+	public float getMaxLateness() {
+		return mTicker.getMaxLateness() / 1000000.0f;
+	}
+
+	private boolean playTick(long tick) {
+		if (mPlayingLoop) tick %= mLap;
+		long time = Math.min(tick * mTicker.getPeriod(), mEnd);
+		
+		float ms = time / 1000000.0f;
+		for (JointTrack joint : mPlaying) {
+			mHerkuleX.addAngle(joint.mID, joint.angleAt(ms), joint.mLed);
+		}
+		mHerkuleX.actionAll(mPlayTime);
+		
+		return mPlayingLoop || time < mEnd;
+	}
+
+	private JointTrack joint(int servoID) {
+		for (JointTrack joint : mJoints) {
+			if (joint.mID == servoID) return joint;
+		}
+		JointTrack joint = new JointTrack(servoID);
+		mJoints.add(joint);
+		return joint;
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+/**
+ * Byte stream to the servos.
+ * 
+ * HerkuleX talks to the servos only through this interface.
+ * SerialTransport is the one for processing.serial.Serial.
+ * 
+ * @author DongbuRobot
+ *
+ */
+public interface Transport {
+
+	/**
+	 * Send bytes.
+	 * 
+	 * @param buf bytes to send
+	 * @param off offset in buf
+	 * @param len number of bytes
+	 */
+	void write(byte[] buf, int off, int len);
+
+	/**
+	 * @return number of received bytes ready to read
+	 */
+	int available();
+
+	/**
+	 * Read received bytes without waiting.
+	 * 
+	 * @param buf destination
+	 * @return number of bytes read, at most buf.length
+	 */
+	int read(byte[] buf);
+
+	/**
+	 * Drop all received bytes.
+	 */
+	void clear();
+
+	/**
+	 * @return baudrate in bps
+	 */
+	int getBaudRate();
+}
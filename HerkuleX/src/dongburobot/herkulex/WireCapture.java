@@ -0,0 +1,200 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Log of every byte sent and received, for HerkuleX.startCapture().
+ * 
+ * File: "HXWC", version (1 byte), baudrate (int), start time (long, ms since 1970),
+ * then one record per port write or read:
+ * time (long, ns since start), direction (1 byte, TX or RX), length (int), bytes.
+ * 
+ * The bus thread only copies the frame into a buffer; a writer thread
+ * empties it into the file. When the disk falls behind, frames are
+ * dropped and counted rather than making the bus wait.
+ * 
+ * @author DongbuRobot
+ *
+ */
+class WireCapture {
+
+	static final int MAGIC			= 0x48585743;		// "HXWC"
+	static final byte VERSION		= 1;
+	static final int HEADER_SIZE	= 17;
+	static final int RECORD_HEADER	= 13;
+
+	static final byte TX = 0;
+	static final byte RX = 1;
+
+	private static final int BUF_SIZE = 64 * 1024;
+	private static final long FLUSH_INTERVAL = 50;		// ms
+
+	private final FileChannel mChannel;
+	private final long mStart = System.nanoTime();
+
+	private final Object mLock = new Object();
+	private ByteBuffer mPending = ByteBuffer.allocateDirect(BUF_SIZE);
+	private ByteBuffer mSpare = ByteBuffer.allocateDirect(BUF_SIZE);	// being written by the writer thread
+	private boolean mRunning = true;
+	private long mFrames;
+	private long mDropped;
+
+	private final Thread mWriter;
+
+	private WireCapture(FileChannel channel, int baudRate) throws IOException {
+		mChannel = channel;
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.put(VERSION);
+		header.putInt(baudRate);
+		header.putLong(System.currentTimeMillis());
+		header.flip();
+		while (header.hasRemaining()) mChannel.write(header);
+		
+		mWriter = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "HerkuleX capture");
+		mWriter.setDaemon(true);
+		mWriter.start();
+	}
+
+	/**
+	 * @param path log file, overwritten
+	 * @param baudRate of the bus, kept for the replay
+	 * @return the capture, null on failure
+	 */
+	static WireCapture open(String path, int baudRate) {
+		FileChannel channel = null;
+		try {
+			channel = new FileOutputStream(path).getChannel();
+			return new WireCapture(channel, baudRate);
+		} catch (IOException e) {
+			e.printStackTrace();
+			IO.close(channel);
+			return null;
+		}
+	}
+
+	/**
+	 * Log bytes that were just sent or received. Never waits for the disk.
+	 */
+	void frame(byte direction, byte[] buf, int off, int len) {
+		long time = System.nanoTime() - mStart;
+		
+		synchronized (mLock) {
+			if (!mRunning) return;
+			
+			if (mPending.remaining() < RECORD_HEADER + len) {
+				mDropped++;
+				mLock.notify();
+				return;
+			}
+			
+			mPending.putLong(time);
+			mPending.put(direction);
+			mPending.putInt(len);
+			mPending.put(buf, off, len);
+			mFrames++;
+			
+			if (mPending.position() > BUF_SIZE / 2) mLock.notify();
+		}
+	}
+
+	/**
+	 * Write what is left and close the file.
+	 */
+	void close() {
+		synchronized (mLock) {
+			mRunning = false;
+			mLock.notify();
+		}
+		
+		try {
+			mWriter.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	long getFrames() {
+		synchronized (mLock) {
+			return mFrames;
+		}
+	}
+
+	long getDropped() {
+		synchronized (mLock) {
+			return mDropped;
+		}
+	}
+
+	private void writeLoop() {
+		try {
+			while (true) {
+				ByteBuffer buf;
+				boolean running;
+				
+				synchronized (mLock) {
+					if (mRunning && mPending.position() == 0) {
+						try {
+							mLock.wait(FLUSH_INTERVAL);
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						}
+					}
+					
+					buf = mPending;
+					mPending = mSpare;
+					mSpare = buf;
+					running = mRunning;
+				}
+				
+				buf.flip();
+				while (buf.hasRemaining()) mChannel.write(buf);
+				buf.clear();
+				
+				if (!running) break;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			synchronized (mLock) {
+				mRunning = false;
+			}
+		} finally {
+			try {
+				mChannel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
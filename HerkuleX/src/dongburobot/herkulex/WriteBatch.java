@@ -0,0 +1,396 @@
+/**
+ * HerkuleX
+ * A Processing library for Dongbu HerkuleX Servo
+ * https://github.com/dongburobot/HerkuleXProcessing/
+ *
+ * Copyright 2013 jgahn
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package dongburobot.herkulex;
+
+import java.util.Arrays;
+
+/**
+ * Register writes collected and sent together.
+ * 
+ * Writes are kept per servo until flush(). Then the registers of each servo
+ * that follow each other go out as one multi-byte RAM or EEP write, and all
+ * packets go out in one port write.
+ * 
+ * Two ranges of RAM with a small gap between them are sent as one packet
+ * when the registers in the gap are known from the register shadow
+ * (setShadowEnabled()) and the gap is not longer than the gap threshold;
+ * the gap is written with the values the servo already holds.
+ * Each packet costs 9 bytes besides the values, so the default threshold
+ * is 8. EEP gaps are never filled since EEP values are not known, nor
+ * gaps over the status and sensor registers 0x30 ~ 0x41.
+ * With the shadow on, values the servo already holds are not sent at all,
+ * except status error and detail which the servo may have changed.
+ * 
+ * Broadcast writes are sent first, then servo by servo, RAM before EEP.
+ * A WriteBatch is meant to be used by one thread.
+ * 
+ * With the servos set to always reply (setAckPolicy(2)), flushVerified()
+ * checks the ACK of every packet. Packets go out back to back, spaced by
+ * the time their ACK takes on the wire, with up to a window of them
+ * waiting for their ACK; only the ones that are not acknowledged, or whose
+ * ACK reports a packet error, are sent again.
+ * 
+ * ex)  WriteBatch batch = new WriteBatch(myHerkuleX);
+ * 		batch.writeRAM(0, 0x35, 0x01);			// LED
+ * 		batch.writeRAM(0, 0x34, 0x60);			// Torque ON
+ * 		batch.writeRAMWord(0, 0x18, 100);		// Position Kp
+ * 		batch.flush();
+ * 
+ * @author DongbuRobot
+ * @example HerkuleX_Write_Batch
+ *
+ */
+public class WriteBatch {
+
+	static final int MAP_SIZE = 128;
+	static final int MAX_DATA = Packet.MAX_SIZE - Packet.HEADER_SIZE - 2;	// Address, Length
+
+	private static final int HEEPWRITE = 0x01;
+	private static final int HRAMWRITE = 0x03;
+
+	private static final int RAM = 0;
+	private static final int EEP = 1;
+	private static final int ROWS = 255;			// 0 ~ 253, 254 = BROADCAST_ID
+	private static final int BROADCAST_ROW = 254;
+	private static final int VERIFY_BUF_SIZE = 2048;
+	private static final int NOT_WRITTEN = -2;
+
+	private final HerkuleX mHerkuleX;
+	private final byte[][] mValues = new byte[2 * ROWS][];		// [memory * ROWS + ID]
+	private final long[] mPending = new long[2 * ROWS * 2];		// one bit per address
+	private int mGap = 8;
+	private boolean mEmpty = true;
+	
+	private int mWindow = 8;
+	private int mRetries = 2;
+	private final int[] mStatus = new int[256];		// by ID, of the last flushVerified()
+	private PacketEncoder mVerifyEncoder;
+	private int mFailed;
+
+	/**
+	 * @param herkulex servos to write to
+	 */
+	public WriteBatch(HerkuleX herkulex) {
+		mHerkuleX = herkulex;
+		Arrays.fill(mStatus, NOT_WRITTEN);
+	}
+
+	/**
+	 * Longest gap between two RAM ranges that is filled instead of starting a new packet.
+	 * 
+	 * @param bytes 0 ~ 127, 0 = only contiguous registers are merged
+	 */
+	public void setGapThreshold(int bytes) {
+		if (bytes < 0 || bytes >= MAP_SIZE) return;
+		mGap = bytes;
+	}
+
+	/**
+	 * @return gap threshold in bytes
+	 */
+	public int getGapThreshold() {
+		return mGap;
+	}
+
+	/**
+	 * Number of packets of flushVerified() that may wait for their ACK at a time.
+	 * 
+	 * @param packets 1 ~ 64 (default: 8)
+	 */
+	public void setWindow(int packets) {
+		if (packets < 1 || packets > 64) return;
+		mWindow = packets;
+	}
+
+	/**
+	 * @return number of packets that may wait for their ACK at a time
+	 */
+	public int getWindow() {
+		return mWindow;
+	}
+
+	/**
+	 * How many times flushVerified() sends a packet again when it fails.
+	 * 
+	 * @param retries 0 ~ 10 (default: 2)
+	 */
+	public void setRetries(int retries) {
+		if (retries < 0 || retries > 10) return;
+		mRetries = retries;
+	}
+
+	/**
+	 * @return number of times a failed packet is sent again
+	 */
+	public int getRetries() {
+		return mRetries;
+	}
+
+	/**
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address RAM address 0 ~ 127
+	 * @param value 0 ~ 255
+	 */
+	public void writeRAM(int servoID, int address, int value) {
+		put(RAM, servoID, address, value);
+	}
+
+	/**
+	 * Two registers, LSB first.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address RAM address of the LSB 0 ~ 126
+	 * @param value 0 ~ 65535
+	 */
+	public void writeRAMWord(int servoID, int address, int value) {
+		put(RAM, servoID, address, value & 0xFF);
+		put(RAM, servoID, address + 1, (value >> 8) & 0xFF);
+	}
+
+	/**
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address EEP address 0 ~ 127
+	 * @param value 0 ~ 255
+	 */
+	public void writeEEP(int servoID, int address, int value) {
+		put(EEP, servoID, address, value);
+	}
+
+	/**
+	 * Two registers, LSB first.
+	 * 
+	 * @param servoID 0 ~ 254 (0x00 ~ 0xFE), 0xFE = BROADCAST_ID
+	 * @param address EEP address of the LSB 0 ~ 126
+	 * @param value 0 ~ 65535
+	 */
+	public void writeEEPWord(int servoID, int address, int value) {
+		put(EEP, servoID, address, value & 0xFF);
+		put(EEP, servoID, address + 1, (value >> 8) & 0xFF);
+	}
+
+	/**
+	 * @return true if there is nothing to flush
+	 */
+	public boolean isEmpty() {
+		return mEmpty;
+	}
+
+	/**
+	 * Forget the writes not flushed yet.
+	 */
+	public void clear() {
+		Arrays.fill(mPending, 0);
+		mEmpty = true;
+	}
+
+	/**
+	 * Send everything collected, in one port write, and empty the batch.
+	 * 
+	 * @return number of packets sent
+	 */
+	public int flush() {
+		if (mEmpty) return 0;
+		
+		BusArbiter bus = mHerkuleX.bus();
+		RegisterShadow shadow = mHerkuleX.shadow();
+		int packets = 0;
+		
+		mHerkuleX.lockBus();					// everything goes out at unlock
+		try {
+			PacketEncoder encoder = bus.encoder();
+			for (int i = 0; i < ROWS; i++) {
+				int id = (BROADCAST_ROW + i) % ROWS;		// broadcast first
+				packets += encode(encoder, RAM, id, shadow, false);
+				packets += encode(encoder, EEP, id, null, false);
+			}
+			bus.write(encoder);
+		} finally {
+			mHerkuleX.unlockBus();
+		}
+		
+		mEmpty = true;
+		return packets;
+	}
+
+	/**
+	 * @example HerkuleX_Write_Batch
+	 * 
+	 * Send everything collected and check that every servo acknowledged it.
+	 * The servos must be set to always reply: setAckPolicy(2).
+	 * 
+	 * The status bytes are sticky: clearError() first, or an old packet error
+	 * makes every write look failed until the retries run out.
+	 * 
+	 * @return true if every packet was acknowledged without a packet error
+	 */
+	public boolean flushVerified() {
+		Arrays.fill(mStatus, NOT_WRITTEN);
+		if (mEmpty) return true;
+		
+		RegisterShadow shadow = mHerkuleX.shadow();
+		if (mVerifyEncoder == null) mVerifyEncoder = new PacketEncoder(new byte[VERIFY_BUF_SIZE]);
+		PacketEncoder encoder = mVerifyEncoder;
+		encoder.reset();
+		mFailed = 0;
+		
+		for (int i = 0; i < ROWS; i++) {
+			int id = (BROADCAST_ROW + i) % ROWS;			// broadcast first
+			encode(encoder, RAM, id, shadow, true);
+			encode(encoder, EEP, id, null, true);
+		}
+		send(encoder, true);
+		
+		mEmpty = true;
+		return mFailed == 0;
+	}
+
+	/**
+	 * @return IDs of the servos with a write that failed in the last flushVerified()
+	 */
+	public int[] getFailedIDs() {
+		int count = 0;
+		for (int id = 0; id < BROADCAST_ROW; id++) {
+			if (HerkuleX.isWriteFailure(mStatus[id])) count++;
+		}
+		
+		int[] ids = new int[count];
+		int n = 0;
+		for (int id = 0; id < BROADCAST_ROW; id++) {
+			if (HerkuleX.isWriteFailure(mStatus[id])) ids[n++] = id;
+		}
+		return ids;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return status error of the servo's ACK in the last flushVerified(), -1 if none
+	 */
+	public int getStatusError(int servoID) {
+		int status = (servoID < 0 || servoID >= BROADCAST_ROW) ? NOT_WRITTEN : mStatus[servoID];
+		return status < 0 ? -1 : status >> 8;
+	}
+
+	/**
+	 * @param servoID 0 ~ 253 (0x00 ~ 0xFD)
+	 * @return status detail of the servo's ACK in the last flushVerified(), -1 if none
+	 */
+	public int getStatusDetail(int servoID) {
+		int status = (servoID < 0 || servoID >= BROADCAST_ROW) ? NOT_WRITTEN : mStatus[servoID];
+		return status < 0 ? -1 : status & 0xFF;
+	}
+
+	private void send(PacketEncoder encoder, boolean verify) {
+		if (verify) {
+			mFailed += mHerkuleX.verifyWrites(encoder.getBuffer(), encoder.length(), mWindow, mRetries, mStatus);
+			encoder.reset();
+		} else {
+			mHerkuleX.bus().write(encoder);
+		}
+	}
+
+	private void put(int memory, int servoID, int address, int value) {
+		int id = servoID & 0xFF;
+		if (id >= ROWS || address < 0 || address >= MAP_SIZE) return;
+		
+		int row = memory * ROWS + id;
+		if (mValues[row] == null) mValues[row] = new byte[MAP_SIZE];
+		mValues[row][address] = (byte) value;
+		mPending[row * 2 + (address >> 6)] |= 1L << address;
+		mEmpty = false;
+	}
+
+	// Encode the pending registers of one servo, return the number of packets.
+	// Verified writes are recorded in the shadow once acknowledged.
+	private int encode(PacketEncoder encoder, int memory, int id, RegisterShadow shadow, boolean verify) {
+		int row = memory * ROWS + id;
+		if (mPending[row * 2] == 0 && mPending[row * 2 + 1] == 0) return 0;
+		
+		byte[] values = mValues[row];
+		if (shadow != null) {
+			for (int a = 0; a < MAP_SIZE; a++) {
+				if (isPending(row, a) && shadow.holds(id, a, values[a] & 0xFF)) clearPending(row, a);
+			}
+		}
+		
+		int packets = 0;
+		int a = 0;
+		while (true) {
+			while (a < MAP_SIZE && !isPending(row, a)) a++;
+			if (a == MAP_SIZE) break;
+			
+			int start = a;
+			int end = a;			// last register of the range
+			while (true) {
+				int next = end + 1;
+				while (next < MAP_SIZE && !isPending(row, next)) next++;
+				if (next == MAP_SIZE || next - start >= MAX_DATA) break;
+				
+				if (next - end - 1 > mGap || !fillGap(shadow, id, values, end + 1, next)) break;
+				end = next;
+			}
+			
+			if (encoder.remaining() < Packet.MAX_SIZE) send(encoder, verify);
+			
+			int length = end - start + 1;
+			encoder.begin(id, memory == RAM ? HRAMWRITE : HEEPWRITE);
+			encoder.put(start);			// Address
+			encoder.put(length);		// Length
+			for (int i = start; i <= end; i++) {
+				encoder.put(values[i] & 0xFF);
+			}
+			encoder.end();
+			if (shadow != null && !verify) shadow.record(id, start, values, start, length, false);
+			packets++;
+			
+			a = end + 1;
+		}
+		
+		mPending[row * 2] = 0;
+		mPending[row * 2 + 1] = 0;
+		return packets;
+	}
+
+	// Put the known values of registers from ~ to-1 in values, false if one is
+	// unknown or updated by the servo itself.
+	private static boolean fillGap(RegisterShadow shadow, int id, byte[] values, int from, int to) {
+		if (from == to) return true;
+		if (shadow == null) return false;
+		
+		for (int a = from; a < to; a++) {
+			if (RegisterShadow.isTelemetry(a) || shadow.get(id, a) < 0) return false;
+		}
+		for (int a = from; a < to; a++) {
+			values[a] = (byte) shadow.get(id, a);
+		}
+		return true;
+	}
+
+	private boolean isPending(int row, int address) {
+		return (mPending[row * 2 + (address >> 6)] & (1L << address)) != 0;
+	}
+
+	private void clearPending(int row, int address) {
+		mPending[row * 2 + (address >> 6)] &= ~(1L << address);
+	}
+}